@@ -0,0 +1,70 @@
+import json
+import sys
+
+# Compares two JMH result files (-rf json) benchmark by benchmark: the average time and the allocation per
+# operation (gc.alloc.rate.norm, from -prof gc). A benchmark regresses when it is slower, or allocates more, by
+# more than the threshold and more than the error margins of both runs.
+#
+# Usage: python3 compare.py baseline.json current.json [threshold, default 0.10]
+
+ALLOC = "gc.alloc.rate.norm"
+RATE = "gc.alloc.rate"
+
+
+def load(path):
+    with open(path) as f:
+        results = json.load(f)
+    runs = {}
+    for r in results:
+        params = ",".join(k + "=" + v for k, v in sorted(r.get("params", {}).items()))
+        key = r["benchmark"].rsplit(".", 2)[-2] + "." + r["benchmark"].rsplit(".", 1)[-1] + "(" + params + ")"
+        # JMH prefixes the secondary metrics with a middle dot in some versions
+        secondary = {k.lstrip("\u00b7"): v for k, v in r.get("secondaryMetrics", {}).items()}
+        runs[key] = (r["primaryMetric"], secondary)
+    return runs
+
+
+def score(metric):
+    error = metric.get("scoreError")
+    if not isinstance(error, (int, float)) or error != error:
+        error = 0.0
+    return metric["score"], error
+
+
+def regressed(old, new, threshold):
+    (s0, e0), (s1, e1) = old, new
+    return s1 > s0 * (1 + threshold) and s1 - s0 > e0 + e1
+
+
+baseline = load(sys.argv[1])
+current = load(sys.argv[2])
+threshold = float(sys.argv[3]) if len(sys.argv) > 3 else 0.10
+
+regressions = 0
+print("%-70s %12s %12s %8s %12s %12s %8s" % ("benchmark", "base", "current", "ratio", "base B/op", "cur B/op",
+                                              "MB/s"))
+for key in sorted(current):
+    if key not in baseline:
+        print("%-70s (not in the baseline)" % key)
+        continue
+    (time0, sec0), (time1, sec1) = baseline[key], current[key]
+    flags = []
+    old, new = score(time0), score(time1)
+    if regressed(old, new, threshold):
+        flags.append("SLOWER")
+    alloc0 = score(sec0[ALLOC]) if ALLOC in sec0 else None
+    alloc1 = score(sec1[ALLOC]) if ALLOC in sec1 else None
+    if alloc0 and alloc1 and regressed(alloc0, alloc1, threshold):
+        flags.append("ALLOCATES MORE")
+    rate = score(sec1[RATE])[0] if RATE in sec1 else float("nan")
+    print("%-70s %12.1f %12.1f %8.2f %12s %12s %8.1f %s" % (
+        key, old[0], new[0], new[0] / old[0] if old[0] else float("nan"),
+        "%.0f" % alloc0[0] if alloc0 else "-", "%.0f" % alloc1[0] if alloc1 else "-", rate, " ".join(flags)))
+    regressions += len(flags) > 0
+
+for key in sorted(baseline):
+    if key not in current:
+        print("%-70s (missing from the current run)" % key)
+
+print("%d regression(s) over %d benchmarks, threshold %.0f%%" % (regressions, len(current), threshold * 100))
+sys.exit(1 if regressions else 0)
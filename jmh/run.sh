@@ -0,0 +1,30 @@
+#!/bin/bash
+
+# Runs the JMH benchmarks with the allocation profiler (gc.alloc.rate).
+#   bash jmh/run.sh record [JMH options]    stores the results as the baseline (jmh/baseline.json)
+#   bash jmh/run.sh compare [JMH options]   compares the results with the baseline, fails on regressions
+# The module must have been built first: mvn -f jmh/pom.xml package
+
+cd "$(dirname "$0")"
+
+CP=target/benchmarks.jar:../lib/pddl4j-4.0.0.jar:../lib/org.sat4j.core.jar
+MODE=${1:-compare}
+shift
+
+case $MODE in
+    record)
+        java -cp $CP org.openjdk.jmh.Main -prof gc -rf json -rff baseline.json "$@"
+        ;;
+    compare)
+        if [ ! -f baseline.json ]; then
+            echo "No baseline: run 'bash jmh/run.sh record' first"
+            exit 1
+        fi
+        java -cp $CP org.openjdk.jmh.Main -prof gc -rf json -rff current.json "$@" && \
+            python3 compare.py baseline.json current.json
+        ;;
+    *)
+        echo "Usage: bash jmh/run.sh record|compare [JMH options]"
+        exit 1
+        ;;
+esac
@@ -0,0 +1,83 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.uga.pddl4j.problem.Problem;
+
+/**
+ * This class implements the benchmarks of the SAT encoding: the encoding of a whole horizon by the constructor of
+ * SATEncoding, and the encoding of one more step by next().
+ *
+ * @version 0.1 - 23.04.2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+
+    @Param({"problem_test", "logistics-p01", "logistics-p12"})
+    public String instance;
+
+    @Param({"SEQUENTIAL", "EXISTS"})
+    public String semantics;
+
+    @Param({"10"})
+    public int steps;
+
+    private ActionTable table;
+    private PlanningGraph graph;
+    private EncodingOptions options;
+
+    /*
+     * A fresh encoding of the horizon for each call of next()
+     */
+    @State(Scope.Thread)
+    public static class Horizon {
+        private SATEncoding sat;
+
+        @Setup(Level.Invocation)
+        public void encode(final EncodingBenchmark benchmark) {
+            this.sat = benchmark.newEncoding();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        final Problem problem = Instances.load(this.instance);
+        Instances.silence();
+        this.options = new EncodingOptions().setSemantics(StepSemantics.valueOf(this.semantics));
+        this.table = new ActionTable(problem);
+        this.graph = new PlanningGraph(this.table, this.options.getSemantics(), this.options.isMutexes());
+    }
+
+    @Benchmark
+    public SATEncoding encode() {
+        return newEncoding();
+    }
+
+    @Benchmark
+    public ClauseStore next(final Horizon horizon) {
+        horizon.sat.next();
+        return horizon.sat.currentDimacs;
+    }
+
+    private SATEncoding newEncoding() {
+        return new SATEncoding(this.table, this.graph, null, this.steps, this.options);
+    }
+}
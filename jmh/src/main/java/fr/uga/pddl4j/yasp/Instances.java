@@ -0,0 +1,55 @@
+package fr.uga.pddl4j.yasp;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import fr.uga.pddl4j.problem.Problem;
+
+/**
+ * This class gives the planning problems used by the benchmarks. They are named "problem_test" or
+ * "logistics-pNN" and are read from the directory given by the system property yasp.root (by default the parent
+ * directory, i.e. the root of the repository when the benchmarks run from jmh/).
+ *
+ * @version 0.1 - 23.04.2024
+ */
+final class Instances {
+
+    private Instances() {
+    }
+
+    static String domain(final String name) {
+        if (name.equals("problem_test")) {
+            return root() + "/problem_test/domain.pddl";
+        }
+        return root() + "/benchmarks/logistics/strips-typed/domain.pddl";
+    }
+
+    static String problem(final String name) {
+        if (name.equals("problem_test")) {
+            return root() + "/problem_test/problem_test.pddl";
+        }
+        if (name.startsWith("logistics-")) {
+            return root() + "/benchmarks/logistics/strips-typed/" + name.substring("logistics-".length()) + ".pddl";
+        }
+        throw new IllegalArgumentException("Unknown instance: " + name);
+    }
+
+    /**
+     * Parses and instantiates an instance.
+     */
+    static Problem load(final String name) throws Exception {
+        final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+        return planner.instantiate(planner.parse(domain(name), problem(name)));
+    }
+
+    /**
+     * The encoding logs a line per call: it would be measured with the code.
+     */
+    static void silence() {
+        Configurator.setLevel(YetAnotherSATPlanner.class.getPackage().getName(), Level.OFF);
+    }
+
+    private static String root() {
+        return System.getProperty("yasp.root", "..");
+    }
+}
@@ -0,0 +1,133 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.problem.Problem;
+
+/**
+ * This class implements the benchmarks around the SAT solver: the transfer of the clauses of a horizon into a
+ * fresh SAT4J solver, and the extraction of the plan from the model of the first satisfiable horizon, boxed
+ * (extractPlan) or read from the primitive model (decodePlan), and its validation. The solving itself is not
+ * measured.
+ *
+ * @version 0.1 - 23.04.2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SolverBenchmark {
+
+    @Param({"problem_test", "logistics-p01", "logistics-p12"})
+    public String instance;
+
+    /*
+     * Exists-step: the first satisfiable horizon of the logistics instances is found in a few seconds
+     */
+    @Param({"EXISTS"})
+    public String semantics;
+
+    private Problem problem;
+    private ActionTable table;
+    private SATEncoding sat;
+    private int[] model;
+    private List<Integer> solution;
+    private int[] plan;
+
+    /*
+     * The first satisfiable horizon encoded at once: all its clauses are in currentDimacs
+     */
+    private SATEncoding horizon;
+
+    /*
+     * A fresh solver, grown to the size of the horizon, for each transfer
+     */
+    @State(Scope.Thread)
+    public static class Solver {
+        private ISolver solver;
+        private final VecInt buffer = new VecInt();
+
+        @Setup(Level.Invocation)
+        public void create(final SolverBenchmark benchmark) {
+            this.solver = SolverFactory.newDefault();
+            this.solver.newVar(benchmark.horizon.getNbVariables());
+        }
+    }
+
+    /*
+     * Searches the first satisfiable horizon as the planner does, and keeps its encoding and its model
+     */
+    @Setup(Level.Trial)
+    public void solve() throws Exception {
+        this.problem = Instances.load(this.instance);
+        Instances.silence();
+        final EncodingOptions options = new EncodingOptions().setSemantics(StepSemantics.valueOf(this.semantics));
+        final ActionTable table = new ActionTable(this.problem);
+        this.table = table;
+        final PlanningGraph graph = new PlanningGraph(table, options.getSemantics(), options.isMutexes());
+        this.sat = new SATEncoding(table, graph, null, graph.getGoalLayer(), options);
+        final ISolver solver = SolverFactory.newDefault();
+        final VecInt buffer = new VecInt();
+        int steps = graph.getGoalLayer();
+        while (true) {
+            solver.newVar(this.sat.getNbVariables());
+            YetAnotherSATPlanner.addClauses(solver, this.sat.currentDimacs, buffer);
+            YetAnotherSATPlanner.addClauses(solver, this.sat.currentGoal, buffer);
+            if (solver.isSatisfiable(new VecInt(new int[] {this.sat.getGoalSelector()}))) {
+                break;
+            }
+            steps++;
+            this.sat.next();
+            this.sat.refute(steps - 1);
+        }
+        this.model = solver.model();
+        this.solution = Arrays.stream(this.model).boxed().collect(Collectors.toList());
+        this.plan = this.sat.decodePlan(this.model);
+        this.horizon = new SATEncoding(table, graph, null, steps, options);
+    }
+
+    @Benchmark
+    public ISolver transfer(final Solver solver) throws ContradictionException {
+        YetAnotherSATPlanner.addClauses(solver.solver, this.horizon.currentDimacs, solver.buffer);
+        return solver.solver;
+    }
+
+    @Benchmark
+    public Plan extractPlan() {
+        return this.sat.extractPlan(this.solution, this.problem);
+    }
+
+    @Benchmark
+    public int[] decodePlan() {
+        return this.sat.decodePlan(this.model);
+    }
+
+    @Benchmark
+    public int[] validate() {
+        PlanValidator.validate(this.table, this.plan);
+        return this.plan;
+    }
+}
@@ -0,0 +1,387 @@
+package fr.uga.pddl4j.yasp;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+import fr.uga.pddl4j.problem.operator.Condition;
+import fr.uga.pddl4j.problem.operator.Effect;
+import fr.uga.pddl4j.util.BitVector;
+
+/**
+ * This class implements a compiled view of a grounded planning problem. It is built once from the problem and
+ * reused by every horizon of the encoding: each action keeps sparse int arrays of its preconditions and effects,
+ * and each fluent keeps the reverse index of the actions that add, delete or require (positively or negatively) it.
+ *
+ * @version 0.1 - 14.04.2024
+ */
+public final class ActionTable {
+
+    private final int nb_fluents;
+    private final int nb_actions;
+
+    /*
+     * Per action: fluents of the positive/negative preconditions and of the add/delete effects
+     */
+    private final int[][] positivePreconditions;
+    private final int[][] negativePreconditions;
+    private final int[][] addEffects;
+    private final int[][] deleteEffects;
+
+    /*
+     * Per fluent: actions adding, deleting or requiring it
+     */
+    private final int[][] adders;
+    private final int[][] deleters;
+    private final int[][] requirers;
+    private final int[][] negativeRequirers;
+
+    /*
+     * Initial state (true fluents) and goal
+     */
+    private final int[] initialState;
+    private final int[] positiveGoal;
+    private final int[] negativeGoal;
+
+    /*
+     * First argument of each fluent (-1 for a fluent without argument)
+     */
+    private final int[] owners;
+
+    /*
+     * Generators of the symmetries of the problem (see Symmetries): each one swaps the actions of its pairs
+     * (a, b), a < b, listed by increasing a
+     */
+    private final int[][] symmetries;
+
+    public ActionTable(final Problem problem) {
+        this.nb_fluents = problem.getFluents().size();
+        final List<Action> actions = problem.getActions();
+        this.nb_actions = actions.size();
+
+        this.positivePreconditions = new int[this.nb_actions][];
+        this.negativePreconditions = new int[this.nb_actions][];
+        this.addEffects = new int[this.nb_actions][];
+        this.deleteEffects = new int[this.nb_actions][];
+        for (int a = 0; a < this.nb_actions; a++) {
+            final Action action = actions.get(a);
+            final Condition pre = action.getPrecondition();
+            final Effect eff = action.getUnconditionalEffect();
+            this.positivePreconditions[a] = toArray(pre.getPositiveFluents());
+            this.negativePreconditions[a] = toArray(pre.getNegativeFluents());
+            this.addEffects[a] = toArray(eff.getPositiveFluents());
+            this.deleteEffects[a] = toArray(eff.getNegativeFluents());
+        }
+
+        this.adders = reverse(this.addEffects, this.nb_fluents);
+        this.deleters = reverse(this.deleteEffects, this.nb_fluents);
+        this.requirers = reverse(this.positivePreconditions, this.nb_fluents);
+        this.negativeRequirers = reverse(this.negativePreconditions, this.nb_fluents);
+
+        this.initialState = toArray(problem.getInitialState().getPositiveFluents());
+        this.positiveGoal = toArray(problem.getGoal().getPositiveFluents());
+        this.negativeGoal = toArray(problem.getGoal().getNegativeFluents());
+
+        this.owners = new int[this.nb_fluents];
+        for (int f = 0; f < this.nb_fluents; f++) {
+            final int[] arguments = problem.getFluents().get(f).getArguments();
+            this.owners[f] = arguments.length > 0 ? arguments[0] : -1;
+        }
+        this.symmetries = new int[0][];
+    }
+
+    /*
+     * Table read back by read() or projected: the reverse indexes are rebuilt from the actions
+     */
+    private ActionTable(int nb_fluents, int[][] positivePreconditions, int[][] negativePreconditions,
+            int[][] addEffects, int[][] deleteEffects, int[] initialState, int[] positiveGoal, int[] negativeGoal,
+            int[] owners, int[][] symmetries) {
+        this.nb_fluents = nb_fluents;
+        this.nb_actions = positivePreconditions.length;
+        this.positivePreconditions = positivePreconditions;
+        this.negativePreconditions = negativePreconditions;
+        this.addEffects = addEffects;
+        this.deleteEffects = deleteEffects;
+        this.adders = reverse(this.addEffects, this.nb_fluents);
+        this.deleters = reverse(this.deleteEffects, this.nb_fluents);
+        this.requirers = reverse(this.positivePreconditions, this.nb_fluents);
+        this.negativeRequirers = reverse(this.negativePreconditions, this.nb_fluents);
+        this.initialState = initialState;
+        this.positiveGoal = positiveGoal;
+        this.negativeGoal = negativeGoal;
+        this.owners = owners;
+        this.symmetries = symmetries;
+    }
+
+    /*
+     * Same table with other symmetries: the arrays are shared
+     */
+    private ActionTable(final ActionTable table, final int[][] symmetries) {
+        this.nb_fluents = table.nb_fluents;
+        this.nb_actions = table.nb_actions;
+        this.positivePreconditions = table.positivePreconditions;
+        this.negativePreconditions = table.negativePreconditions;
+        this.addEffects = table.addEffects;
+        this.deleteEffects = table.deleteEffects;
+        this.adders = table.adders;
+        this.deleters = table.deleters;
+        this.requirers = table.requirers;
+        this.negativeRequirers = table.negativeRequirers;
+        this.initialState = table.initialState;
+        this.positiveGoal = table.positiveGoal;
+        this.negativeGoal = table.negativeGoal;
+        this.owners = table.owners;
+        this.symmetries = symmetries;
+    }
+
+    /**
+     * The same table with the given symmetry generators.
+     */
+    public ActionTable withSymmetries(final int[][] symmetries) {
+        return new ActionTable(this, symmetries);
+    }
+
+    /*
+     * Binary form: nb_fluents, nb_actions, the four rows of each action, the initial state, the goal, the owners
+     * of the fluents and the symmetries, each row being its length followed by its elements. The reverse indexes are
+     * not written.
+     */
+    int serializedSize() {
+        int size = 2 + 3 + this.initialState.length + this.positiveGoal.length + this.negativeGoal.length
+            + this.nb_fluents + 1;
+        for (int[] pairs : this.symmetries) {
+            size += 1 + pairs.length;
+        }
+        for (int a = 0; a < this.nb_actions; a++) {
+            size += 4 + this.positivePreconditions[a].length + this.negativePreconditions[a].length
+                + this.addEffects[a].length + this.deleteEffects[a].length;
+        }
+        return size;
+    }
+
+    void write(final IntBuffer out) {
+        out.put(this.nb_fluents);
+        out.put(this.nb_actions);
+        for (int a = 0; a < this.nb_actions; a++) {
+            writeRow(out, this.positivePreconditions[a]);
+            writeRow(out, this.negativePreconditions[a]);
+            writeRow(out, this.addEffects[a]);
+            writeRow(out, this.deleteEffects[a]);
+        }
+        writeRow(out, this.initialState);
+        writeRow(out, this.positiveGoal);
+        writeRow(out, this.negativeGoal);
+        out.put(this.owners);
+        out.put(this.symmetries.length);
+        for (int[] pairs : this.symmetries) {
+            writeRow(out, pairs);
+        }
+    }
+
+    static ActionTable read(final IntBuffer in) {
+        final int nb_fluents = in.get();
+        final int nb_actions = in.get();
+        final int[][] positivePreconditions = new int[nb_actions][];
+        final int[][] negativePreconditions = new int[nb_actions][];
+        final int[][] addEffects = new int[nb_actions][];
+        final int[][] deleteEffects = new int[nb_actions][];
+        for (int a = 0; a < nb_actions; a++) {
+            positivePreconditions[a] = readRow(in);
+            negativePreconditions[a] = readRow(in);
+            addEffects[a] = readRow(in);
+            deleteEffects[a] = readRow(in);
+        }
+        final int[] initialState = readRow(in);
+        final int[] positiveGoal = readRow(in);
+        final int[] negativeGoal = readRow(in);
+        final int[] owners = new int[nb_fluents];
+        in.get(owners);
+        final int[][] symmetries = new int[in.get()][];
+        for (int i = 0; i < symmetries.length; i++) {
+            symmetries[i] = readRow(in);
+        }
+        return new ActionTable(nb_fluents, positivePreconditions, negativePreconditions, addEffects, deleteEffects,
+            initialState, positiveGoal, negativeGoal, owners, symmetries);
+    }
+
+    /**
+     * Table of a subset of the actions and of the fluents, numbered in the order of the given arrays. The conditions
+     * and the effects on the other fluents are dropped, and so are the symmetries that do not map the actions kept
+     * onto themselves.
+     *
+     * @param actions the actions kept, sorted.
+     * @param fluents the fluents kept, sorted; they must include the preconditions of the actions kept.
+     */
+    public ActionTable project(final int[] actions, final int[] fluents) {
+        final int[] index = new int[this.nb_fluents];
+        Arrays.fill(index, -1);
+        for (int f = 0; f < fluents.length; f++) {
+            index[fluents[f]] = f;
+        }
+        final int[][] positivePreconditions = new int[actions.length][];
+        final int[][] negativePreconditions = new int[actions.length][];
+        final int[][] addEffects = new int[actions.length][];
+        final int[][] deleteEffects = new int[actions.length][];
+        for (int a = 0; a < actions.length; a++) {
+            positivePreconditions[a] = projectRow(this.positivePreconditions[actions[a]], index);
+            negativePreconditions[a] = projectRow(this.negativePreconditions[actions[a]], index);
+            addEffects[a] = projectRow(this.addEffects[actions[a]], index);
+            deleteEffects[a] = projectRow(this.deleteEffects[actions[a]], index);
+        }
+        final int[] owners = new int[fluents.length];
+        for (int f = 0; f < fluents.length; f++) {
+            owners[f] = this.owners[fluents[f]];
+        }
+        final int[] actionIndex = new int[this.nb_actions];
+        Arrays.fill(actionIndex, -1);
+        for (int a = 0; a < actions.length; a++) {
+            actionIndex[actions[a]] = a;
+        }
+        final List<int[]> symmetries = new ArrayList<int[]>();
+        for (int[] pairs : this.symmetries) {
+            final int[] projected = projectRow(pairs, actionIndex);
+            // Both actions of a pair are kept or none
+            if (projected.length > 0 && projected.length % 2 == 0) {
+                boolean closed = true;
+                for (int i = 0; i < pairs.length; i += 2) {
+                    closed &= (actionIndex[pairs[i]] < 0) == (actionIndex[pairs[i + 1]] < 0);
+                }
+                if (closed) {
+                    symmetries.add(projected);
+                }
+            }
+        }
+        return new ActionTable(fluents.length, positivePreconditions, negativePreconditions, addEffects,
+            deleteEffects, projectRow(this.initialState, index), projectRow(this.positiveGoal, index),
+            projectRow(this.negativeGoal, index), owners, symmetries.toArray(new int[0][]));
+    }
+
+    /*
+     * Elements of a row kept by the index, renumbered
+     */
+    private static int[] projectRow(final int[] row, final int[] index) {
+        int n = 0;
+        for (int f : row) {
+            if (index[f] >= 0) {
+                n++;
+            }
+        }
+        final int[] projected = new int[n];
+        n = 0;
+        for (int f : row) {
+            if (index[f] >= 0) {
+                projected[n++] = index[f];
+            }
+        }
+        return projected;
+    }
+
+    private static void writeRow(final IntBuffer out, final int[] row) {
+        out.put(row.length);
+        out.put(row);
+    }
+
+    private static int[] readRow(final IntBuffer in) {
+        final int[] row = new int[in.get()];
+        in.get(row);
+        return row;
+    }
+
+    public int getNbFluents() {
+        return this.nb_fluents;
+    }
+
+    public int getNbActions() {
+        return this.nb_actions;
+    }
+
+    public int[] getPositivePreconditions(int action) {
+        return this.positivePreconditions[action];
+    }
+
+    public int[] getNegativePreconditions(int action) {
+        return this.negativePreconditions[action];
+    }
+
+    public int[] getAddEffects(int action) {
+        return this.addEffects[action];
+    }
+
+    public int[] getDeleteEffects(int action) {
+        return this.deleteEffects[action];
+    }
+
+    public int[] getAdders(int fluent) {
+        return this.adders[fluent];
+    }
+
+    public int[] getDeleters(int fluent) {
+        return this.deleters[fluent];
+    }
+
+    public int[] getRequirers(int fluent) {
+        return this.requirers[fluent];
+    }
+
+    public int[] getNegativeRequirers(int fluent) {
+        return this.negativeRequirers[fluent];
+    }
+
+    public int[] getInitialState() {
+        return this.initialState;
+    }
+
+    public int[] getPositiveGoal() {
+        return this.positiveGoal;
+    }
+
+    public int[] getNegativeGoal() {
+        return this.negativeGoal;
+    }
+
+    public int getOwner(int fluent) {
+        return this.owners[fluent];
+    }
+
+    /**
+     * Generators of the symmetries: the pairs (a, b) of actions swapped by each, flattened.
+     */
+    public int[][] getSymmetries() {
+        return this.symmetries;
+    }
+
+    private static int[] toArray(final BitVector bits) {
+        final int[] array = new int[bits.cardinality()];
+        int n = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            array[n++] = i;
+        }
+        return array;
+    }
+
+    /*
+     * Reverse adjacency: for each fluent, the (sorted) actions whose row contains it
+     */
+    private static int[][] reverse(final int[][] rows, final int nb_columns) {
+        final int[] count = new int[nb_columns];
+        for (int[] row : rows) {
+            for (int c : row) {
+                count[c]++;
+            }
+        }
+        final int[][] columns = new int[nb_columns][];
+        for (int c = 0; c < nb_columns; c++) {
+            columns[c] = new int[count[c]];
+            count[c] = 0;
+        }
+        for (int r = 0; r < rows.length; r++) {
+            for (int c : rows[r]) {
+                columns[c][count[c]++] = r;
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,145 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This enumeration defines the encodings of the "at most one action per step" constraint of the sequential
+ * semantics. Except PAIRWISE, they need auxiliary variables that are reserved in every layer of the VariableMap.
+ *
+ * @version 0.1 - 16.04.2024
+ */
+public enum AtMostOne {
+
+    /**
+     * One binary clause per pair of literals: n(n-1)/2 clauses, no auxiliary variable.
+     */
+    PAIRWISE {
+        @Override
+        public int auxiliaries(int n) {
+            return 0;
+        }
+
+        @Override
+        public void encode(int[] literals, int n, int[] aux, ClauseStore clauses) {
+            pairwise(literals, 0, n, clauses);
+        }
+    },
+
+    /**
+     * Sequential counter (Sinz 2005): 3n clauses, n-1 auxiliary variables. aux[i] means "one of the literals
+     * 0..i is true".
+     */
+    COUNTER {
+        @Override
+        public int auxiliaries(int n) {
+            return Math.max(0, n - 1);
+        }
+
+        @Override
+        public void encode(int[] literals, int n, int[] aux, ClauseStore clauses) {
+            if (n <= 1) {
+                return;
+            }
+            clauses.add(-literals[0], aux[0]);
+            for (int i = 1; i < n - 1; i++) {
+                clauses.add(-literals[i], aux[i]);
+                clauses.add(-aux[i - 1], aux[i]);
+                clauses.add(-literals[i], -aux[i - 1]);
+            }
+            clauses.add(-literals[n - 1], -aux[n - 2]);
+        }
+    },
+
+    /**
+     * Ladder encoding (Gent and Nightingale 2004): 3n clauses, n-1 auxiliary variables forming a ladder
+     * aux[i+1] implies aux[i]. The literal i is true only if the ladder steps from aux[i-1] to not aux[i].
+     */
+    LADDER {
+        @Override
+        public int auxiliaries(int n) {
+            return Math.max(0, n - 1);
+        }
+
+        @Override
+        public void encode(int[] literals, int n, int[] aux, ClauseStore clauses) {
+            if (n <= 1) {
+                return;
+            }
+            for (int i = 0; i < n - 2; i++) {
+                clauses.add(-aux[i + 1], aux[i]);
+            }
+            clauses.add(-literals[0], -aux[0]);
+            for (int i = 1; i < n - 1; i++) {
+                clauses.add(-literals[i], aux[i - 1]);
+                clauses.add(-literals[i], -aux[i]);
+            }
+            clauses.add(-literals[n - 1], aux[n - 2]);
+        }
+    },
+
+    /**
+     * Product encoding (Chen 2010): the literals are laid out on a p x q grid, each literal implies its row and its
+     * column, and at most one row and one column are selected, recursively. 2n + o(n) clauses, 2 sqrt(n) + o(sqrt(n))
+     * auxiliary variables.
+     */
+    PRODUCT {
+        @Override
+        public int auxiliaries(int n) {
+            if (n <= PRODUCT_THRESHOLD) {
+                return 0;
+            }
+            final int p = rows(n);
+            final int q = columns(n, p);
+            return p + q + auxiliaries(p) + auxiliaries(q);
+        }
+
+        @Override
+        public void encode(int[] literals, int n, int[] aux, ClauseStore clauses) {
+            product(literals, 0, n, aux, 0, clauses);
+        }
+
+        private void product(int[] literals, int from, int n, int[] aux, int first, ClauseStore clauses) {
+            if (n <= PRODUCT_THRESHOLD) {
+                pairwise(literals, from, n, clauses);
+                return;
+            }
+            final int p = rows(n);
+            final int q = columns(n, p);
+            for (int i = 0; i < n; i++) {
+                clauses.add(-literals[from + i], aux[first + i / q]);
+                clauses.add(-literals[from + i], aux[first + p + i % q]);
+            }
+            product(aux, first, p, aux, first + p + q, clauses);
+            product(aux, first + p, q, aux, first + p + q + auxiliaries(p), clauses);
+        }
+
+        private int rows(int n) {
+            return (int) Math.ceil(Math.sqrt(n));
+        }
+
+        private int columns(int n, int p) {
+            return (n + p - 1) / p;
+        }
+    };
+
+    /*
+     * Below this size the product encoding falls back to pairwise clauses
+     */
+    private static final int PRODUCT_THRESHOLD = 4;
+
+    /**
+     * Number of auxiliary variables needed to encode at most one of n literals.
+     */
+    public abstract int auxiliaries(int n);
+
+    /**
+     * Encodes "at most one of literals[0, n[ is true" using the auxiliary variables aux[0, auxiliaries(n)[.
+     */
+    public abstract void encode(int[] literals, int n, int[] aux, ClauseStore clauses);
+
+    private static void pairwise(int[] literals, int from, int n, ClauseStore clauses) {
+        for (int i = from; i < from + n; i++) {
+            for (int j = i + 1; j < from + n; j++) {
+                clauses.add(-literals[i], -literals[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package fr.uga.pddl4j.yasp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.planners.Statistics;
+import fr.uga.pddl4j.problem.Problem;
+
+/**
+ * This class implements a batch runner: the problems of a directory are solved with the same domain on a bounded
+ * pool of workers, each problem within a wall clock limit. In process, the limit stops the SAT search with
+ * YetAnotherSATPlanner.cancel(). With --fork each problem is solved in its own JVM, which also bounds its heap and
+ * isolates the batch from crashes; the JVM is killed if it outlives the limit.
+ *
+ * A result row is appended to the CSV file (and to the JSON lines file if any) as soon as a problem is done, so an
+ * interrupted batch keeps the rows of the problems already solved.
+ *
+ * Usage: BatchRunner domain.pddl directory [options] [planner options]
+ *   -w, --workers n      problems solved at once (default: number of processors)
+ *   --fork true|false    one JVM per problem (default false)
+ *   --limit s            wall clock limit per problem in seconds (default 600)
+ *   --heap size          heap limit per problem, e.g. 2048m, forked JVMs only (default 2048m)
+ *   --csv file           CSV results (default batch.csv)
+ *   --json file          JSON lines results (default none)
+ * The other options are handed to the planner (see YetAnotherSATPlanner.configure()).
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class BatchRunner {
+
+    private enum Status { SOLVED, UNSOLVED, UNSOLVABLE, TIMEOUT, MEMOUT, ERROR }
+
+    /*
+     * A forked JVM prints its result on a line starting with the marker
+     */
+    private static final String MARKER = "@batch\t";
+
+    /*
+     * Time left to a forked JVM to start and to exit, beyond the limit of its problem
+     */
+    private static final long GRACE = 10;
+
+    private static final String HEADER = "problem,status,length,parse_ms,encode_ms,search_ms,wall_ms,message";
+
+    /*
+     * PDDL4J is not known to parse and instantiate problems safely from several threads
+     */
+    private static final Object PARSER_LOCK = new Object();
+
+    /*
+     * Result of one problem
+     */
+    private static final class Result {
+        private final String problem;
+        private Status status = Status.ERROR;
+        private int length = -1;
+        private long parse;
+        private long encode;
+        private long search;
+        private long wall;
+        private String message = "";
+
+        private Result(final String problem) {
+            this.problem = problem;
+        }
+
+        private void fail(final Status status, final String message) {
+            this.status = status;
+            this.message = message == null ? "" : message.replaceAll("\\s+", " ").trim();
+        }
+
+        /*
+         * Tab separated fields printed by a forked JVM, the problem and the wall time aside
+         */
+        private String toLine() {
+            return this.status + "\t" + this.length + "\t" + this.parse + "\t" + this.encode + "\t" + this.search
+                + "\t" + this.message;
+        }
+
+        private void fromLine(final String line) {
+            final String[] fields = line.split("\t", 6);
+            this.status = Status.valueOf(fields[0]);
+            this.length = Integer.parseInt(fields[1]);
+            this.parse = Long.parseLong(fields[2]);
+            this.encode = Long.parseLong(fields[3]);
+            this.search = Long.parseLong(fields[4]);
+            this.message = fields.length > 5 ? fields[5] : "";
+        }
+
+        private String toCsv() {
+            return csv(this.problem) + "," + this.status + "," + this.length + "," + this.parse + "," + this.encode
+                + "," + this.search + "," + this.wall + "," + csv(this.message);
+        }
+
+        private String toJson() {
+            final StringBuilder line = new StringBuilder("{\"problem\":");
+            Telemetry.quote(line, this.problem);
+            line.append(",\"status\":\"").append(this.status).append('"');
+            line.append(",\"length\":").append(this.length);
+            line.append(",\"parseMs\":").append(this.parse);
+            line.append(",\"encodeMs\":").append(this.encode);
+            line.append(",\"searchMs\":").append(this.search);
+            line.append(",\"wallMs\":").append(this.wall);
+            line.append(",\"message\":");
+            Telemetry.quote(line, this.message);
+            return line.append('}').toString();
+        }
+
+        private static String csv(final String value) {
+            if (value.contains(",") || value.contains("\"")) {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+    }
+
+    private final String domain;
+    private String[] plannerOptions;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private boolean fork = false;
+    private long limit = 600;
+    private String heap = null;
+    private Path csv = Paths.get("batch.csv");
+    private Path json = null;
+
+    private BatchRunner(final String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * Solves the problems and writes a row per problem as soon as it is done.
+     *
+     * @param problems the problem files.
+     * @throws IOException if the results cannot be written.
+     */
+    private void run(final List<File> problems) throws IOException, InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        final CompletionService<Result> done = new ExecutorCompletionService<Result>(pool);
+        final boolean header = !Files.exists(this.csv) || Files.size(this.csv) == 0;
+        try (Writer csv = Files.newBufferedWriter(this.csv, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+             Writer json = this.json == null ? null : Files.newBufferedWriter(this.json, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) {
+                csv.write(HEADER + "\n");
+                csv.flush();
+            }
+            for (File problem : problems) {
+                final String path = problem.getPath();
+                done.submit(() -> this.fork ? fork(path) : solve(this.domain, path, this.plannerOptions,
+                    this.limit, timer));
+            }
+            for (int i = 0; i < problems.size(); i++) {
+                final Result result = done.take().get();
+                csv.write(result.toCsv() + "\n");
+                csv.flush();
+                if (json != null) {
+                    json.write(result.toJson() + "\n");
+                    json.flush();
+                }
+                System.out.println("[" + (i + 1) + "/" + problems.size() + "] " + result.problem + ": "
+                    + result.status + (result.length >= 0 ? " (" + result.length + " actions)" : "") + " in "
+                    + result.wall + " ms" + (result.message.isEmpty() ? "" : " - " + result.message));
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    /*
+     * Solves a problem in this JVM; the search is cancelled once the limit is over
+     */
+    private static Result solve(final String domain, final String problem, final String[] options, long limit,
+            final ScheduledExecutorService timer) {
+        final Result result = new Result(problem);
+        final long start = System.currentTimeMillis();
+        ScheduledFuture<?> alarm = null;
+        try {
+            final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+            // The planners of the workers would print their progress all at once
+            planner.setLogLevel(LogLevel.OFF);
+            if (!planner.configure(options, 0)) {
+                result.fail(Status.ERROR, "Invalid planner options");
+                return result;
+            }
+            planner.setTimeout((int) Math.min(Integer.MAX_VALUE, limit));
+            // Grounded problems are taken from the cache of the planner if any
+            final ProblemCache.Entry entry;
+            final Problem pb;
+            synchronized (PARSER_LOCK) {
+                if (planner.getCache() != null) {
+                    entry = planner.load(domain, problem);
+                    pb = null;
+                } else {
+                    entry = null;
+                    pb = planner.instantiate(planner.parse(domain, problem));
+                }
+            }
+            if (entry != null ? !entry.isSolvable() : !pb.isSolvable()) {
+                result.fail(Status.UNSOLVABLE, "Goal can be simplified to FALSE");
+            } else {
+                final long remaining = limit * 1000 - (System.currentTimeMillis() - start);
+                alarm = timer.schedule(planner::cancel, Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                int length = -1;
+                if (entry != null) {
+                    final int[] plan = planner.solve(entry);
+                    length = plan != null ? plan.length : -1;
+                } else {
+                    final Plan plan = planner.solve(pb);
+                    length = plan != null ? plan.size() : -1;
+                }
+                if (length >= 0) {
+                    result.status = Status.SOLVED;
+                    result.length = length;
+                } else if (planner.isExpired()) {
+                    result.fail(Status.TIMEOUT, "at least " + (planner.getUnsatSteps() + 1) + " steps");
+                } else {
+                    result.fail(Status.UNSOLVED, "No solution found");
+                }
+            }
+            final Statistics stats = planner.getStatistics();
+            result.parse = stats.getTimeToParse();
+            result.encode = stats.getTimeToEncode();
+            result.search = stats.getTimeToSearch();
+        } catch (OutOfMemoryError e) {
+            result.fail(Status.MEMOUT, e.getMessage());
+        } catch (Exception e) {
+            result.fail(Status.ERROR, e.toString());
+        } finally {
+            if (alarm != null) {
+                alarm.cancel(false);
+            }
+            result.wall = System.currentTimeMillis() - start;
+        }
+        return result;
+    }
+
+    /*
+     * Solves a problem in a child JVM, with the same class path, and reads back its result line
+     */
+    private Result fork(final String problem) throws IOException, InterruptedException {
+        final Result result = new Result(problem);
+        final List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (this.heap != null) {
+            command.add("-Xmx" + this.heap);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BatchRunner.class.getName());
+        command.add("--child");
+        command.add(this.domain);
+        command.add(problem);
+        command.add(String.valueOf(this.limit));
+        command.addAll(Arrays.asList(this.plannerOptions));
+
+        final File output = File.createTempFile("batch", ".out");
+        final long start = System.currentTimeMillis();
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output).start();
+        try {
+            if (!process.waitFor(this.limit + GRACE, TimeUnit.SECONDS)) {
+                result.fail(Status.TIMEOUT, "killed");
+                return result;
+            }
+            String line = null;
+            boolean memout = false;
+            for (String l : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+                if (l.startsWith(MARKER)) {
+                    line = l.substring(MARKER.length());
+                }
+                memout |= l.contains("OutOfMemoryError");
+            }
+            if (line != null) {
+                result.fromLine(line);
+            } else if (memout) {
+                result.fail(Status.MEMOUT, "java.lang.OutOfMemoryError");
+            } else {
+                result.fail(Status.ERROR, "exit code " + process.exitValue());
+            }
+        } finally {
+            process.destroyForcibly();
+            result.wall = System.currentTimeMillis() - start;
+            Files.deleteIfExists(output.toPath());
+        }
+        return result;
+    }
+
+    /*
+     * Reads the options of the runner; the others are kept for the planner. Returns null on an invalid option.
+     */
+    private static BatchRunner configure(final String[] args) {
+        final List<String> plannerOptions = new ArrayList<String>();
+        final BatchRunner runner = new BatchRunner(args[0]);
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                return null;
+            }
+            final String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "-w":
+                    case "--workers":
+                        runner.workers = Integer.parseInt(value);
+                        break;
+                    case "--fork":
+                        runner.fork = Boolean.parseBoolean(value);
+                        break;
+                    case "--limit":
+                        runner.limit = Long.parseLong(value);
+                        break;
+                    case "--heap":
+                        runner.heap = value;
+                        break;
+                    case "--csv":
+                        runner.csv = Paths.get(value);
+                        break;
+                    case "--json":
+                        runner.json = Paths.get(value);
+                        break;
+                    default:
+                        plannerOptions.add(args[i]);
+                        plannerOptions.add(value);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid value for " + args[i] + ": " + value);
+                return null;
+            }
+        }
+        if (runner.workers < 1 || runner.limit < 1) {
+            System.out.println("Invalid value for the workers or the limit");
+            return null;
+        }
+        // Fails early on invalid planner options
+        runner.plannerOptions = plannerOptions.toArray(new String[0]);
+        if (!new YetAnotherSATPlanner().configure(runner.plannerOptions, 0)) {
+            return null;
+        }
+        if (runner.fork && runner.heap == null) {
+            runner.heap = "2048m";
+        }
+        return runner;
+    }
+
+    public static void main(final String[] args) {
+        // Forked JVM: --child domain problem limit [planner options]
+        if (args.length >= 4 && args[0].equals("--child")) {
+            final Result result = solve(args[1], args[2], Arrays.copyOfRange(args, 4, args.length),
+                Long.parseLong(args[3]), Executors.newSingleThreadScheduledExecutor());
+            System.out.println(MARKER + result.toLine());
+            System.exit(0);
+        }
+
+        if (args.length < 2) {
+            System.out.println("Invalid command line");
+            return;
+        }
+        final BatchRunner runner = configure(args);
+        if (runner == null) {
+            System.out.println("Invalid command line");
+            return;
+        }
+        if (runner.heap != null && !runner.fork) {
+            System.out.println("The heap limit applies to forked problems only (--fork true)");
+        }
+
+        final File directory = new File(args[1]);
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".pddl"));
+        if (files == null) {
+            System.out.println("Not a directory: " + directory);
+            return;
+        }
+        try {
+            // The domain is skipped when it is in the directory of the problems
+            final File domain = new File(runner.domain).getCanonicalFile();
+            final List<File> problems = new ArrayList<File>();
+            for (File file : files) {
+                if (!file.getCanonicalFile().equals(domain)) {
+                    problems.add(file);
+                }
+            }
+            problems.sort(null);
+            runner.run(problems);
+        } catch (IOException e) {
+            System.out.println("Cannot write the results: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
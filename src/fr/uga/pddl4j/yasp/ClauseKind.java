@@ -0,0 +1,60 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This enumeration defines the kinds of clauses of the SAT encoding, counted apart for the telemetry.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public enum ClauseKind {
+
+    /**
+     * Initial state and variables fixed by the planning graph.
+     */
+    FIXED,
+
+    /**
+     * h2 mutexes and exactly-one groups.
+     */
+    INVARIANT,
+
+    /**
+     * An action implies its preconditions.
+     */
+    PRECONDITION,
+
+    /**
+     * An action implies its effects at the next step.
+     */
+    EFFECT,
+
+    /**
+     * Actions that may not be applied at the same step, with their auxiliary variables.
+     */
+    EXCLUSION,
+
+    /**
+     * Frame axioms: a fluent changes only if an action changes it.
+     */
+    FRAME,
+
+    /**
+     * Lex-leader constraints breaking the symmetries between objects.
+     */
+    SYMMETRY,
+
+    /**
+     * Landmarks reached at each step and their orderings, and the fact landmarks reached and the action landmarks
+     * applied by the goal of each horizon.
+     */
+    LANDMARK,
+
+    /**
+     * Goal of each horizon, guarded by its selector.
+     */
+    GOAL,
+
+    /**
+     * Actions too far from the goal of a horizon at their step, guarded by its selector.
+     */
+    RELEVANCE
+}
@@ -0,0 +1,27 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This enumeration defines where a ClauseStore keeps its clauses. Off the heap, only the clause being built and a
+ * bounded batch of clauses stay on the heap: the batch is moved to the off-heap chunks each time it is full, so that
+ * the heap used by a store does not grow with the number of clauses.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public enum ClauseStorage {
+
+    /**
+     * Int arrays on the Java heap.
+     */
+    HEAP,
+
+    /**
+     * Direct buffers, limited by -XX:MaxDirectMemorySize (by default the maximum heap size).
+     */
+    DIRECT,
+
+    /**
+     * A temporary file mapped in memory, deleted when the store is released or the JVM exits: the pages are paged
+     * in and out by the operating system and count neither in the heap nor in the direct memory.
+     */
+    MAPPED;
+}
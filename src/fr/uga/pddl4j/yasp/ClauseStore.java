@@ -0,0 +1,389 @@
+package fr.uga.pddl4j.yasp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class implements a flat store of DIMACS clauses. All the literals are kept in a single int buffer and the
+ * clause boundaries in an offsets array, so that no clause is ever boxed.
+ *
+ * Off the heap (see ClauseStorage), these buffers only hold a batch of clauses: once the batch reaches
+ * BATCH_LITERALS literals it is appended to chunks of direct or memory-mapped ints, each clause as its length
+ * followed by its literals, and the buffers are reused. The clauses are written once and read back in order by
+ * forEach(); clear() keeps the chunks for the next clauses and release() frees them.
+ *
+ * @version 0.1 - 12.04.2024
+ */
+public final class ClauseStore {
+
+    /**
+     * Callback used to visit the clauses of a store.
+     *
+     * @param <E> the exception thrown by the consumer.
+     */
+    public interface ClauseConsumer<E extends Exception> {
+        /**
+         * Receives the clause stored in literals[from, to[. The buffer must not be kept by the consumer.
+         */
+        void accept(int[] literals, int from, int to) throws E;
+    }
+
+    /*
+     * Literals of the batch kept on the heap by an off-heap store, and ints per off-heap chunk
+     */
+    private static final int BATCH_LITERALS = 1 << 18;
+    private static final int CHUNK_INTS = 1 << 20;
+
+    /*
+     * Literal buffer: clause i is literals[offsets[i], offsets[i+1][
+     */
+    private int[] literals;
+    private int nb_literals;
+
+    /*
+     * Start offset of each clause, offsets[size] is the end of the last clause
+     */
+    private int[] offsets;
+    private int size;
+
+    /*
+     * Clauses moved off the heap, null for a heap store
+     */
+    private final Chunks chunks;
+
+    public ClauseStore() {
+        this(1024);
+    }
+
+    public ClauseStore(int expectedClauses) {
+        final int capacity = Math.max(16, expectedClauses);
+        this.literals = new int[capacity * 2];
+        this.offsets = new int[capacity + 1];
+        this.chunks = null;
+    }
+
+    public ClauseStore(final ClauseStorage storage) {
+        this.literals = new int[storage == ClauseStorage.HEAP ? 2048 : BATCH_LITERALS + 1024];
+        this.offsets = new int[1025];
+        this.chunks = storage == ClauseStorage.HEAP ? null : new Chunks(storage);
+    }
+
+    /*
+     * Unit clause
+     */
+    public void add(int l1) {
+        ensureLiterals(1);
+        this.literals[this.nb_literals++] = l1;
+        close();
+    }
+
+    /*
+     * Binary clause
+     */
+    public void add(int l1, int l2) {
+        ensureLiterals(2);
+        this.literals[this.nb_literals++] = l1;
+        this.literals[this.nb_literals++] = l2;
+        close();
+    }
+
+    /*
+     * Clause made of literals[from, to[
+     */
+    public void add(int[] literals, int from, int to) {
+        ensureLiterals(to - from);
+        System.arraycopy(literals, from, this.literals, this.nb_literals, to - from);
+        this.nb_literals += to - from;
+        close();
+    }
+
+    /*
+     * Variable length clauses: push() the literals then close() the clause
+     */
+    public void push(int literal) {
+        ensureLiterals(1);
+        this.literals[this.nb_literals++] = literal;
+    }
+
+    public void close() {
+        if (this.size + 1 == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+        this.offsets[++this.size] = this.nb_literals;
+        if (this.chunks != null && this.nb_literals >= BATCH_LITERALS) {
+            flush();
+        }
+    }
+
+    /*
+     * Drops the literals pushed since the last clause was closed
+     */
+    public void cancel() {
+        this.nb_literals = this.offsets[this.size];
+    }
+
+    /*
+     * Appends all the clauses of another store
+     */
+    public void addAll(ClauseStore other) {
+        if (other.chunks != null && !other.chunks.isEmpty() || this.chunks != null) {
+            other.forEach(this::add);
+            return;
+        }
+        ensureLiterals(other.nb_literals);
+        System.arraycopy(other.literals, 0, this.literals, this.nb_literals, other.nb_literals);
+        for (int i = 1; i <= other.size; i++) {
+            if (this.size + 1 == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+            }
+            this.offsets[++this.size] = this.nb_literals + other.offsets[i];
+        }
+        this.nb_literals += other.nb_literals;
+    }
+
+    /*
+     * Appends all the clauses of another store with every variable shifted by offset (the sign of the literals is
+     * kept). The caller makes sure that the shifted variables do not overflow.
+     */
+    public void addAllShifted(ClauseStore other, int offset) {
+        if (other.chunks != null && !other.chunks.isEmpty() || this.chunks != null) {
+            other.forEach((literals, from, to) -> {
+                ensureLiterals(to - from);
+                for (int i = from; i < to; i++) {
+                    this.literals[this.nb_literals++] = literals[i] > 0 ? literals[i] + offset : literals[i] - offset;
+                }
+                close();
+            });
+            return;
+        }
+        ensureLiterals(other.nb_literals);
+        final int[] from = other.literals;
+        final int[] to = this.literals;
+        final int base = this.nb_literals;
+        for (int i = 0; i < other.nb_literals; i++) {
+            final int literal = from[i];
+            to[base + i] = literal > 0 ? literal + offset : literal - offset;
+        }
+        if (this.size + other.size >= this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, Math.max(this.offsets.length * 2, this.size + other.size + 1));
+        }
+        for (int i = 1; i <= other.size; i++) {
+            this.offsets[this.size + i] = base + other.offsets[i];
+        }
+        this.size += other.size;
+        this.nb_literals += other.nb_literals;
+    }
+
+    public <E extends Exception> void forEach(ClauseConsumer<E> consumer) throws E {
+        if (this.chunks != null) {
+            this.chunks.forEach(consumer);
+        }
+        for (int i = 0; i < this.size; i++) {
+            consumer.accept(this.literals, this.offsets[i], this.offsets[i + 1]);
+        }
+    }
+
+    public int size() {
+        return this.size + (this.chunks == null ? 0 : this.chunks.nb_clauses);
+    }
+
+    public long literalCount() {
+        return this.nb_literals + (this.chunks == null ? 0 : this.chunks.nb_ints - this.chunks.nb_clauses);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /*
+     * Drops the clauses but keeps the buffers (and the off-heap chunks) for the next encoding
+     */
+    public void clear() {
+        this.size = 0;
+        this.nb_literals = 0;
+        if (this.chunks != null) {
+            this.chunks.clear();
+        }
+    }
+
+    /*
+     * Drops the clauses and frees the off-heap chunks, the temporary file of a mapped store being deleted. The store
+     * can still be used: new chunks are allocated when needed.
+     */
+    public void release() {
+        clear();
+        if (this.chunks != null) {
+            this.chunks.release();
+        }
+    }
+
+    /*
+     * Binary form: size, nb_literals, the end offset of each clause, then the literals. The clauses of a heap store
+     * are written at once, those of an off-heap store in two passes.
+     */
+    int serializedSize() {
+        return Math.toIntExact(2 + size() + literalCount());
+    }
+
+    void write(final IntBuffer out) {
+        out.put(size());
+        out.put(Math.toIntExact(literalCount()));
+        if (this.chunks == null) {
+            out.put(this.offsets, 1, this.size);
+            out.put(this.literals, 0, this.nb_literals);
+            return;
+        }
+        final int[] end = new int[1];
+        forEach((literals, from, to) -> {
+            end[0] += to - from;
+            out.put(end[0]);
+        });
+        forEach((literals, from, to) -> out.put(literals, from, to - from));
+    }
+
+    static ClauseStore read(final IntBuffer in) {
+        final int size = in.get();
+        final int nb_literals = in.get();
+        final ClauseStore store = new ClauseStore(size);
+        store.ensureLiterals(nb_literals);
+        in.get(store.offsets, 1, size);
+        in.get(store.literals, 0, nb_literals);
+        store.size = size;
+        store.nb_literals = nb_literals;
+        return store;
+    }
+
+    /*
+     * Moves the batch of closed clauses off the heap, the literals of an open clause staying in the batch
+     */
+    private void flush() {
+        for (int i = 0; i < this.size; i++) {
+            this.chunks.append(this.literals, this.offsets[i], this.offsets[i + 1]);
+        }
+        final int open = this.nb_literals - this.offsets[this.size];
+        System.arraycopy(this.literals, this.offsets[this.size], this.literals, 0, open);
+        this.size = 0;
+        this.nb_literals = open;
+    }
+
+    private void ensureLiterals(int n) {
+        if (this.nb_literals + n > this.literals.length) {
+            this.literals = Arrays.copyOf(this.literals, Math.max(this.literals.length * 2, this.nb_literals + n));
+        }
+    }
+
+    /*
+     * Off-heap clauses: chunk k holds the ints k * CHUNK_INTS to (k + 1) * CHUNK_INTS - 1, each clause being its
+     * length followed by its literals, possibly across two chunks
+     */
+    private static final class Chunks {
+        private final ClauseStorage storage;
+        private final List<IntBuffer> chunks = new ArrayList<IntBuffer>();
+        private FileChannel channel;
+        private long nb_ints;
+        private int nb_clauses;
+        private final int[] length = new int[1];
+        private int[] clause = new int[64];
+
+        private Chunks(final ClauseStorage storage) {
+            this.storage = storage;
+        }
+
+        private boolean isEmpty() {
+            return this.nb_clauses == 0;
+        }
+
+        private void append(final int[] literals, int from, int to) {
+            this.length[0] = to - from;
+            put(this.length, 0, 1);
+            put(literals, from, to);
+            this.nb_clauses++;
+        }
+
+        private void put(final int[] literals, int from, int to) {
+            while (from < to) {
+                final int k = (int) (this.nb_ints / CHUNK_INTS);
+                final int offset = (int) (this.nb_ints % CHUNK_INTS);
+                final int n = Math.min(to - from, CHUNK_INTS - offset);
+                chunk(k).put(offset, literals, from, n);
+                from += n;
+                this.nb_ints += n;
+            }
+        }
+
+        private void get(long position, final int[] literals, int n) {
+            int from = 0;
+            while (from < n) {
+                final int k = (int) (position / CHUNK_INTS);
+                final int offset = (int) (position % CHUNK_INTS);
+                final int m = Math.min(n - from, CHUNK_INTS - offset);
+                this.chunks.get(k).get(offset, literals, from, m);
+                from += m;
+                position += m;
+            }
+        }
+
+        private <E extends Exception> void forEach(ClauseConsumer<E> consumer) throws E {
+            long position = 0;
+            for (int i = 0; i < this.nb_clauses; i++) {
+                get(position, this.length, 1);
+                final int n = this.length[0];
+                if (n > this.clause.length) {
+                    this.clause = new int[Math.max(n, 2 * this.clause.length)];
+                }
+                get(position + 1, this.clause, n);
+                position += 1 + n;
+                consumer.accept(this.clause, 0, n);
+            }
+        }
+
+        private void clear() {
+            this.nb_ints = 0;
+            this.nb_clauses = 0;
+        }
+
+        private void release() {
+            this.chunks.clear();
+            if (this.channel != null) {
+                try {
+                    this.channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.channel = null;
+            }
+        }
+
+        private IntBuffer chunk(int k) {
+            if (k < this.chunks.size()) {
+                return this.chunks.get(k);
+            }
+            final ByteBuffer bytes;
+            try {
+                if (this.storage == ClauseStorage.DIRECT) {
+                    bytes = ByteBuffer.allocateDirect(4 * CHUNK_INTS);
+                } else {
+                    if (this.channel == null) {
+                        this.channel = FileChannel.open(Files.createTempFile("yasp-clauses", ".bin"),
+                            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                    }
+                    bytes = this.channel.map(FileChannel.MapMode.READ_WRITE, 4L * CHUNK_INTS * k, 4 * CHUNK_INTS);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            final IntBuffer chunk = bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
+            this.chunks.add(chunk);
+            return chunk;
+        }
+    }
+}
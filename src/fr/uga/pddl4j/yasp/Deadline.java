@@ -0,0 +1,71 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * This class implements the wall clock deadline of a planning run, shared by its parsing, grounding, encoding and
+ * search: it is also the cancellation token of the run. The long loops check it between two units of work (a step
+ * of the encoding, a phase of the analysis) and stop with a CancellationException once it is over or cancelled, and
+ * each SAT query only gets the time left.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class Deadline {
+
+    /*
+     * Start in the time of System.nanoTime() and duration in nanoseconds, Long.MAX_VALUE if none
+     */
+    private final long start;
+    private final long duration;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a deadline the given time from now.
+     *
+     * @param millis the time left in milliseconds, no deadline if it is not positive.
+     */
+    public Deadline(long millis) {
+        this.start = System.nanoTime();
+        this.duration = millis > 0 ? millis * 1000000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Time left in milliseconds, 0 once over or cancelled.
+     */
+    public long remaining() {
+        if (this.cancelled) {
+            return 0;
+        }
+        final long elapsed = System.nanoTime() - this.start;
+        return elapsed >= this.duration ? 0 : Math.max(1, (this.duration - elapsed) / 1000000L);
+    }
+
+    /**
+     * True once the deadline is over or cancelled.
+     */
+    public boolean isExpired() {
+        return remaining() == 0;
+    }
+
+    /**
+     * Ends the run now, from any thread.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Stops the calling loop if the deadline is over or cancelled.
+     *
+     * @throws CancellationException if so.
+     */
+    public void check() {
+        if (isExpired()) {
+            throw new CancellationException(this.cancelled ? "Cancelled" : "Deadline reached");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This class gathers the options of the SAT encoding of a planning problem.
+ *
+ * @version 0.1 - 15.04.2024
+ */
+public final class EncodingOptions {
+
+    /*
+     * Which actions may be applied at the same step
+     */
+    private StepSemantics semantics = StepSemantics.SEQUENTIAL;
+
+    /*
+     * Encoding of "at most one action per step" for the sequential semantics
+     */
+    private AtMostOne atMostOne = AtMostOne.PAIRWISE;
+
+    /*
+     * Forward reachability (see PlanningGraph): unreachable variables are fixed and their clauses dropped
+     */
+    private boolean reachability = true;
+
+    /*
+     * Graphplan mutexes in the reachability analysis
+     */
+    private boolean mutexes = false;
+
+    /*
+     * State invariants (see Invariants) added to every step as redundant clauses
+     */
+    private boolean invariants = false;
+
+    /*
+     * Backward relevance (see Relevance): the actions and fluents that cannot matter to the goal are dropped
+     */
+    private boolean relevance = true;
+
+    /*
+     * Per horizon, the actions too far from the goal at their step are disabled under the goal selector
+     */
+    private boolean stepRelevance = false;
+
+    /*
+     * Symmetries between objects (see Symmetries) broken by lex-leader constraints on the actions
+     */
+    private boolean symmetry = true;
+
+    /*
+     * Fact landmarks (see Landmarks) and their orderings required at every step and by the goal of every horizon,
+     * action landmarks applied before the goal of every horizon
+     */
+    private boolean landmarks = false;
+
+    /*
+     * Number of threads encoding the steps of a horizon
+     */
+    private int parallelism = 1;
+
+    /*
+     * Transitions copied from a template once the planning graph has leveled off (see SATEncoding)
+     */
+    private boolean template = true;
+
+    /*
+     * Where the clauses of each horizon are kept until they are handed to the solver
+     */
+    private ClauseStorage storage = ClauseStorage.HEAP;
+
+    public StepSemantics getSemantics() {
+        return this.semantics;
+    }
+
+    public EncodingOptions setSemantics(final StepSemantics semantics) {
+        this.semantics = semantics;
+        return this;
+    }
+
+    public AtMostOne getAtMostOne() {
+        return this.atMostOne;
+    }
+
+    public EncodingOptions setAtMostOne(final AtMostOne atMostOne) {
+        this.atMostOne = atMostOne;
+        return this;
+    }
+
+    public boolean isReachability() {
+        return this.reachability;
+    }
+
+    public EncodingOptions setReachability(final boolean reachability) {
+        this.reachability = reachability;
+        return this;
+    }
+
+    public boolean isMutexes() {
+        return this.mutexes;
+    }
+
+    public EncodingOptions setMutexes(final boolean mutexes) {
+        this.mutexes = mutexes;
+        return this;
+    }
+
+    public boolean isInvariants() {
+        return this.invariants;
+    }
+
+    public EncodingOptions setInvariants(final boolean invariants) {
+        this.invariants = invariants;
+        return this;
+    }
+
+    public boolean isRelevance() {
+        return this.relevance;
+    }
+
+    public EncodingOptions setRelevance(final boolean relevance) {
+        this.relevance = relevance;
+        return this;
+    }
+
+    public boolean isStepRelevance() {
+        return this.stepRelevance;
+    }
+
+    public EncodingOptions setStepRelevance(final boolean stepRelevance) {
+        this.stepRelevance = stepRelevance;
+        return this;
+    }
+
+    public boolean isSymmetry() {
+        return this.symmetry;
+    }
+
+    public EncodingOptions setSymmetry(final boolean symmetry) {
+        this.symmetry = symmetry;
+        return this;
+    }
+
+    public boolean isLandmarks() {
+        return this.landmarks;
+    }
+
+    public EncodingOptions setLandmarks(final boolean landmarks) {
+        this.landmarks = landmarks;
+        return this;
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    public EncodingOptions setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public boolean isTemplate() {
+        return this.template;
+    }
+
+    public EncodingOptions setTemplate(final boolean template) {
+        this.template = template;
+        return this;
+    }
+
+    public ClauseStorage getStorage() {
+        return this.storage;
+    }
+
+    public EncodingOptions setStorage(final ClauseStorage storage) {
+        this.storage = storage;
+        return this;
+    }
+}
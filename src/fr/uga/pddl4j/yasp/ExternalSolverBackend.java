@@ -0,0 +1,301 @@
+package fr.uga.pddl4j.yasp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * This class implements a SAT solver running in a child process. Each query launches the command, streams the
+ * clauses added so far in DIMACS format to its standard input, the assumptions being written as unit clauses, and
+ * reads back its answer in the SAT competition format ("s SATISFIABLE" and "v" lines). The DIMACS text is never
+ * built in memory: the literals are written as ASCII digits in a direct buffer flushed to the pipe. The clauses are
+ * written by their own thread, so that the timeout also bounds a solver that stops reading its input.
+ *
+ * Standard DIMACS solvers are not incremental, so nothing learned by a query is kept for the next ones. The clauses
+ * of all the queries are kept by the backend, off the heap if so configured (see ClauseStorage), and streamed again
+ * to each query: a search over n horizons writes O(n^2) steps of clauses. This backend is meant for one-shot or
+ * few-horizon runs, e.g. with the doubling horizon strategy.
+ *
+ * @version 0.1 - 20.04.2024
+ */
+public final class ExternalSolverBackend implements SolverBackend {
+
+    /*
+     * Size of the buffer flushed to the pipe of the child process
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /*
+     * Room left in the buffer for one literal: sign, 10 digits and a separator
+     */
+    private static final int LITERAL_SIZE = 12;
+
+    private static final byte[] END_OF_CLAUSE = "0\n".getBytes(StandardCharsets.US_ASCII);
+
+    private enum Status { SAT, UNSAT, UNKNOWN }
+
+    /*
+     * Answer read from the standard output of the child process
+     */
+    private static final class Answer implements Runnable {
+        private final InputStream output;
+        private Status status = Status.UNKNOWN;
+        private int[] model = new int[0];
+        private int size;
+
+        private Answer(final InputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(this.output,
+                StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("s ")) {
+                        final String status = line.substring(2).trim();
+                        if (status.equals("SATISFIABLE")) {
+                            this.status = Status.SAT;
+                        } else if (status.equals("UNSATISFIABLE")) {
+                            this.status = Status.UNSAT;
+                        }
+                    } else if (line.startsWith("v ")) {
+                        for (String token : line.substring(2).trim().split("\\s+")) {
+                            if (!token.isEmpty() && !token.equals("0")) {
+                                push(Integer.parseInt(token));
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                this.status = Status.UNKNOWN;
+            }
+        }
+
+        private void push(int literal) {
+            if (this.size == this.model.length) {
+                this.model = Arrays.copyOf(this.model, Math.max(16, 2 * this.size));
+            }
+            this.model[this.size++] = literal;
+        }
+    }
+
+    private final String[] command;
+    private final ClauseStore clauses;
+    private final byte[] digits = new byte[LITERAL_SIZE];
+    private int nb_variables;
+    private long timeout;
+    private int[] model = new int[0];
+    private volatile Process process;
+    private volatile Thread writer;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a backend running the given command, which must read a DIMACS formula on its standard input.
+     */
+    public ExternalSolverBackend(final String... command) {
+        this(ClauseStorage.HEAP, command);
+    }
+
+    /**
+     * Creates a backend keeping its clauses in the given storage.
+     */
+    public ExternalSolverBackend(final ClauseStorage storage, final String... command) {
+        if (command.length == 0) {
+            throw new IllegalArgumentException("Empty solver command");
+        }
+        this.command = command.clone();
+        this.clauses = new ClauseStore(storage);
+    }
+
+    @Override
+    public void newVar(int howmany) {
+        this.nb_variables = Math.max(this.nb_variables, howmany);
+    }
+
+    @Override
+    public void setTimeoutMs(long millis) {
+        this.timeout = millis;
+    }
+
+    @Override
+    public void addClauses(final ClauseStore clauses) {
+        this.clauses.addAll(clauses);
+    }
+
+    @Override
+    public boolean isSatisfiable(final int[] assumptions) throws TimeoutException {
+        this.cancelled = false;
+        final long deadline = System.currentTimeMillis() + this.timeout;
+        final Process process;
+        try {
+            process = new ProcessBuilder(this.command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot launch the SAT solver " + String.join(" ", this.command), e);
+        }
+        this.process = process;
+        // A cancellation before the process was published has not destroyed it
+        if (this.cancelled) {
+            process.destroyForcibly();
+        }
+        final Answer answer = new Answer(process.getInputStream());
+        final Thread reader = new Thread(answer, "external-solver-output");
+        reader.setDaemon(true);
+        reader.start();
+        final Thread writer = new Thread(() -> {
+            try (WritableByteChannel channel = Channels.newChannel(process.getOutputStream())) {
+                write(channel, assumptions);
+            } catch (IOException e) {
+                // The solver stopped reading its input or was destroyed: its answer, if any, tells why
+            }
+        }, "external-solver-input");
+        writer.setDaemon(true);
+        this.writer = writer;
+        writer.start();
+        try {
+            if (this.timeout > 0) {
+                if (!process.waitFor(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    throw new TimeoutException("Timeout of the external SAT solver");
+                }
+            } else {
+                process.waitFor();
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for the external SAT solver");
+        } finally {
+            this.process = null;
+            process.destroyForcibly();
+            // The pipe is broken: the writer stops at its next flush
+            join(writer);
+            this.writer = null;
+        }
+        if (this.cancelled || answer.status == Status.UNKNOWN) {
+            throw new TimeoutException("No answer from the external SAT solver");
+        }
+        if (answer.status == Status.SAT) {
+            this.model = Arrays.copyOf(answer.model, answer.size);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int[] model() {
+        return this.model;
+    }
+
+    /**
+     * The counters of the external solver are not parsed.
+     */
+    @Override
+    public Map<String, Number> getStat() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+        final Process process = this.process;
+        if (process != null) {
+            process.destroyForcibly();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        cancel();
+        // The clauses may still be read by the writer of a query
+        final Thread writer = this.writer;
+        if (writer != null) {
+            join(writer);
+        }
+        this.clauses.release();
+    }
+
+    /*
+     * Waits for a thread even if interrupted, the interruption being kept for the caller
+     */
+    private static void join(final Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Streams the clauses and the assumptions in DIMACS format
+     */
+    private void write(final WritableByteChannel channel, final int[] assumptions) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.put(("p cnf " + this.nb_variables + " " + (this.clauses.size() + assumptions.length) + "\n")
+            .getBytes(StandardCharsets.US_ASCII));
+        this.clauses.forEach((literals, from, to) -> {
+            for (int i = from; i < to; i++) {
+                putLiteral(channel, buffer, literals[i]);
+            }
+            endClause(channel, buffer);
+        });
+        for (int literal : assumptions) {
+            putLiteral(channel, buffer, literal);
+            endClause(channel, buffer);
+        }
+        flush(channel, buffer);
+    }
+
+    private void putLiteral(final WritableByteChannel channel, final ByteBuffer buffer, int literal)
+            throws IOException {
+        if (buffer.remaining() < LITERAL_SIZE) {
+            flush(channel, buffer);
+        }
+        if (literal < 0) {
+            buffer.put((byte) '-');
+        }
+        // Digits from the lowest one; the variable is positive and below Integer.MAX_VALUE
+        int value = Math.abs(literal);
+        int n = 0;
+        do {
+            this.digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (n > 0) {
+            buffer.put(this.digits[--n]);
+        }
+        buffer.put((byte) ' ');
+    }
+
+    private static void endClause(final WritableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < END_OF_CLAUSE.length) {
+            flush(channel, buffer);
+        }
+        buffer.put(END_OF_CLAUSE);
+    }
+
+    private static void flush(final WritableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
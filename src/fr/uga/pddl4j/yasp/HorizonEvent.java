@@ -0,0 +1,96 @@
+package fr.uga.pddl4j.yasp;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class implements the Java Flight Recorder event committed for each horizon by Telemetry. It is recorded
+ * when the planner runs with a flight recording, e.g. java -XX:StartFlightRecording=filename=yasp.jfr ..., and
+ * costs nothing otherwise.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+@Name("fr.uga.pddl4j.yasp.Horizon")
+@Label("Horizon")
+@Category({"YetAnotherSATPlanner", "Search"})
+@Description("Encoding and SAT query of one horizon")
+@StackTrace(false)
+public final class HorizonEvent extends Event {
+
+    @Label("Instance")
+    public String instance;
+
+    @Label("Steps")
+    public int steps;
+
+    @Label("Result")
+    @Description("SAT, UNSAT or UNKNOWN (timeout or error)")
+    public String result;
+
+    @Label("Variables")
+    public int variables;
+
+    @Label("Fixed Clauses")
+    public int fixedClauses;
+
+    @Label("Invariant Clauses")
+    public int invariantClauses;
+
+    @Label("Precondition Clauses")
+    public int preconditionClauses;
+
+    @Label("Effect Clauses")
+    public int effectClauses;
+
+    @Label("Exclusion Clauses")
+    public int exclusionClauses;
+
+    @Label("Frame Clauses")
+    public int frameClauses;
+
+    @Label("Symmetry Clauses")
+    public int symmetryClauses;
+
+    @Label("Landmark Clauses")
+    public int landmarkClauses;
+
+    @Label("Goal Clauses")
+    public int goalClauses;
+
+    @Label("Relevance Clauses")
+    public int relevanceClauses;
+
+    @Label("Encode Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long encodeTime;
+
+    @Label("Transfer Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long transferTime;
+
+    @Label("Solve Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long solveTime;
+
+    @Label("Conflicts")
+    public long conflicts;
+
+    @Label("Decisions")
+    public long decisions;
+
+    @Label("Propagations")
+    public long propagations;
+
+    @Label("Learned Clauses")
+    public long learnedClauses;
+
+    @Label("Peak Heap")
+    @DataAmount
+    public long peakHeap;
+}
@@ -0,0 +1,399 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+
+/**
+ * This class implements a concurrent search over several horizons, in the spirit of Rintanen's algorithms B and C.
+ * The horizons n, n+k, n+2k, ... are opened at once, each with its own encoding and solver, and run on a pool of
+ * worker threads by time slices. The slice of a horizon decreases geometrically with its rank among the open
+ * horizons and doubles each time it runs out of time. A SAT answer is returned as soon as it appears; in optimal
+ * mode the search goes on until the horizon just below the best plan is proven UNSAT.
+ *
+ * Every step semantics allows empty steps, so an UNSAT horizon proves all the shorter ones UNSAT and a SAT
+ * horizon all the longer ones SAT. A horizon whose encoding or solver fails is dropped and the search goes on with
+ * the others.
+ *
+ * @version 0.1 - 18.04.2024
+ */
+public final class HorizonScheduler {
+
+    private static final Logger LOGGER = LogManager.getLogger(HorizonScheduler.class.getName());
+
+    /*
+     * Outcome of one time slice of a horizon; FAILED if its encoding or its solver threw an exception
+     */
+    private enum Status { SAT, UNSAT, TIMEOUT, FAILED }
+
+    /*
+     * Longest wait for a horizon, in milliseconds, before the deadline is checked again
+     */
+    private static final long POLL = 50;
+
+    /*
+     * A horizon with its own encoding and solver. Only one worker runs it at a time; the main thread may stop it
+     * and release it at any time.
+     */
+    private final class Horizon {
+        private final int steps;
+        private volatile SATEncoding sat;
+        private volatile SolverBackend solver;
+        private int attempts;
+        private Status last;
+        private Exception error;
+        private int[] plan;
+        private volatile boolean obsolete;
+
+        /*
+         * Telemetry: times of the encoding, of the transfer to the solver and of all the slices, in milliseconds
+         */
+        private long encodeTime;
+        private long transferTime;
+        private long solveTime;
+
+        private Horizon(int steps) {
+            this.steps = steps;
+        }
+
+        private Status run(long budget) throws ContradictionException {
+            if (this.obsolete) {
+                release();
+                return Status.TIMEOUT;
+            }
+            if (this.sat == null) {
+                final long timer = System.currentTimeMillis();
+                final SATEncoding sat = new SATEncoding(HorizonScheduler.this.table, HorizonScheduler.this.graph,
+                    HorizonScheduler.this.invariants, HorizonScheduler.this.relevance,
+                    HorizonScheduler.this.landmarks, this.steps, HorizonScheduler.this.options, null,
+                    HorizonScheduler.this.deadline);
+                this.encodeTime = System.currentTimeMillis() - timer;
+                final SolverBackend solver = HorizonScheduler.this.solvers.get();
+                synchronized (this) {
+                    this.sat = sat;
+                    this.solver = solver;
+                }
+                solver.newVar(sat.getNbVariables());
+                solver.addClauses(sat.currentDimacs);
+                solver.addClauses(sat.currentGoal);
+                // The clauses are in the solver: the encoding is only kept to decode the plan
+                sat.release();
+                this.transferTime = System.currentTimeMillis() - timer - this.encodeTime;
+                HorizonScheduler.this.timeToEncode.addAndGet(System.currentTimeMillis() - timer);
+            }
+            final SATEncoding sat = this.sat;
+            final SolverBackend solver = this.solver;
+            if (this.obsolete || sat == null) {
+                release();
+                return Status.TIMEOUT;
+            }
+            // A slice never outlives the deadline of the search
+            final long remaining = HorizonScheduler.this.deadline.remaining();
+            if (remaining == 0) {
+                return Status.TIMEOUT;
+            }
+            solver.setTimeoutMs(Math.min(budget, remaining));
+            final long timer = System.currentTimeMillis();
+            try {
+                if (solver.isSatisfiable(new int[] {sat.getGoalSelector()})) {
+                    this.plan = sat.decodePlan(solver.model());
+                    return Status.SAT;
+                }
+                return Status.UNSAT;
+            } catch (TimeoutException e) {
+                return Status.TIMEOUT;
+            } finally {
+                this.solveTime += System.currentTimeMillis() - timer;
+                if (this.obsolete) {
+                    release();
+                }
+            }
+        }
+
+        /*
+         * Records the horizon once it is proven SAT or UNSAT: the counters of its solver cover all its slices
+         */
+        private void record(final Status status) {
+            final Telemetry telemetry = HorizonScheduler.this.telemetry;
+            final SolverBackend solver = this.solver;
+            if (telemetry != null) {
+                telemetry.record(this.steps, status == Status.FAILED ? "UNKNOWN" : status.name(), this.sat,
+                    this.encodeTime, this.transferTime, this.solveTime, Telemetry.none(),
+                    solver == null ? Telemetry.none() : solver.getStat());
+            }
+        }
+
+        /*
+         * Stops the solver if it is running; the worker running the horizon releases it
+         */
+        private void cancel() {
+            this.obsolete = true;
+            final SolverBackend solver = this.solver;
+            if (solver != null) {
+                solver.cancel();
+            }
+        }
+
+        /*
+         * Shuts the solver down and frees the encoding, once
+         */
+        private synchronized void release() {
+            if (this.solver != null) {
+                this.solver.shutdown();
+            }
+            this.sat = null;
+            this.solver = null;
+        }
+    }
+
+    private final int threads;
+    private final int stride;
+    private final double rate;
+    private final long slice;
+    private final boolean optimal;
+
+    private ActionTable table;
+    private PlanningGraph graph;
+    private Invariants invariants;
+    private Relevance relevance;
+    private Landmarks landmarks;
+    private EncodingOptions options;
+    private Deadline deadline;
+    private int unsat;
+    private final AtomicLong timeToEncode = new AtomicLong();
+    private Telemetry telemetry;
+    private Supplier<SolverBackend> solvers = () -> new SolverPortfolio("Default");
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param threads number of worker threads.
+     * @param stride  distance k between two horizons opened in a row.
+     * @param rate    geometric rate in ]0, 1]: the slice of the horizon of rank r is rate^r times the base slice.
+     * @param slice   base time slice in milliseconds.
+     * @param optimal if true, keeps proving shorter horizons UNSAT after a plan is found.
+     */
+    public HorizonScheduler(int threads, int stride, double rate, long slice, boolean optimal) {
+        if (threads < 1 || stride < 1 || rate <= 0 || rate > 1 || slice < 1) {
+            throw new IllegalArgumentException("Invalid scheduler parameters");
+        }
+        this.threads = threads;
+        this.stride = stride;
+        this.rate = rate;
+        this.slice = slice;
+        this.optimal = optimal;
+    }
+
+    /**
+     * Records each horizon proven SAT or UNSAT in the telemetry (none by default).
+     */
+    public void setTelemetry(final Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Sets the factory of the solvers, one per horizon (the default SAT4J solver by default).
+     */
+    public void setSolvers(final Supplier<SolverBackend> solvers) {
+        this.solvers = solvers;
+    }
+
+    /**
+     * Searches a plan with first <= steps <= last.
+     *
+     * @param table      the action table of the problem.
+     * @param graph      the planning graph built from the table, or null.
+     * @param invariants the invariants computed from the table, or null.
+     * @param relevance  the relevance analysis that projected the table, or null.
+     * @param landmarks  the landmarks of the table, or null.
+     * @param deadline   deadline of the search, which also stops it when cancelled.
+     * @return the indices of the actions of the plan found, or null.
+     */
+    public int[] search(final ActionTable table, final PlanningGraph graph,
+            final Invariants invariants, final Relevance relevance, final Landmarks landmarks,
+            final EncodingOptions options, int first, int last, final Deadline deadline) {
+        this.table = table;
+        this.graph = graph;
+        this.invariants = invariants;
+        this.relevance = relevance;
+        this.landmarks = landmarks;
+        this.options = options;
+        this.deadline = deadline;
+        this.unsat = first - 1;
+        // Twice as many horizons as threads, so that the slices of the horizons interleave
+        final int window = 2 * this.threads;
+
+        final ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        final CompletionService<Horizon> done = new ExecutorCompletionService<Horizon>(pool);
+        final List<Horizon> open = new ArrayList<Horizon>();
+        final List<Horizon> created = new ArrayList<Horizon>();
+        int[] best = null;
+        int bestSteps = last + 1;
+        int maxUnsat = first - 1;
+        int nextSteps = first;
+        int stride = this.stride;
+        int running = 0;
+        try {
+            while (true) {
+                // Open new horizons up to the window size
+                while (open.size() < window && nextSteps < bestSteps && nextSteps <= last) {
+                    if (!isOpen(open, nextSteps)) {
+                        final Horizon h = new Horizon(nextSteps);
+                        open.add(h);
+                        created.add(h);
+                        submit(done, h, open);
+                        running++;
+                    }
+                    nextSteps += stride;
+                }
+                if (running == 0) {
+                    break;
+                }
+                // Polled by short waits, so that a cancellation is seen at once
+                Future<Horizon> future = null;
+                while (future == null && !deadline.isExpired()) {
+                    future = done.poll(Math.min(deadline.remaining(), POLL), TimeUnit.MILLISECONDS);
+                }
+                if (future == null) {
+                    LOGGER.info("Concurrent horizon search: timeout\n");
+                    break;
+                }
+                running--;
+                final Horizon h = future.get();
+                if (h.obsolete) {
+                    continue;
+                }
+                if (h.last == Status.SAT) {
+                    LOGGER.info("Horizon " + h.steps + " is Satisfiable !\n");
+                    h.record(h.last);
+                    best = h.plan;
+                    bestSteps = h.steps;
+                    // Longer horizons are useless now
+                    for (Horizon other : new ArrayList<Horizon>(open)) {
+                        if (other.steps >= h.steps) {
+                            other.cancel();
+                            open.remove(other);
+                        }
+                    }
+                    if (!this.optimal || bestSteps - 1 <= maxUnsat) {
+                        break;
+                    }
+                    // The horizons skipped by the stride must be searched too
+                    nextSteps = maxUnsat + 1;
+                    stride = 1;
+                } else if (h.last == Status.UNSAT) {
+                    LOGGER.info("Horizon " + h.steps + " isn't Satisfiable :(\n");
+                    h.record(h.last);
+                    maxUnsat = Math.max(maxUnsat, h.steps);
+                    this.unsat = maxUnsat;
+                    // Shorter horizons are UNSAT too
+                    for (Horizon other : new ArrayList<Horizon>(open)) {
+                        if (other.steps <= h.steps) {
+                            other.cancel();
+                            open.remove(other);
+                        }
+                    }
+                    if (best != null && bestSteps - 1 <= maxUnsat) {
+                        break;
+                    }
+                    if (nextSteps <= maxUnsat) {
+                        nextSteps = maxUnsat + 1;
+                    }
+                } else if (h.last == Status.FAILED) {
+                    // Nothing is known about this horizon: the others go on
+                    LOGGER.error("Horizon " + h.steps + " failed: " + h.error + "\n");
+                    h.record(h.last);
+                    open.remove(h);
+                    h.release();
+                } else {
+                    // Time slice exhausted: run it again later with a longer slice
+                    h.attempts++;
+                    submit(done, h, open);
+                    running++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                LOGGER.info("Concurrent horizon search: timeout\n");
+            } else {
+                LOGGER.error(e.getCause().getMessage() + "\n");
+            }
+        } finally {
+            for (Horizon h : created) {
+                h.cancel();
+            }
+            pool.shutdownNow();
+            // A worker still running a horizon only sees the solver it holds shut down
+            for (Horizon h : created) {
+                h.release();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Greatest horizon proven UNSAT by the last search, first - 1 if none: a plan found has more steps.
+     */
+    public int getUnsatSteps() {
+        return this.unsat;
+    }
+
+    /**
+     * Encoding time of the last search summed over the workers, in milliseconds. The workers encode in parallel and
+     * while other horizons are searched, so it can exceed the wall time of the search.
+     */
+    public long getTimeToEncode() {
+        return this.timeToEncode.get();
+    }
+
+    /*
+     * Runs a slice of the horizon on the pool; the slice depends on its rank among the open horizons
+     */
+    private void submit(final CompletionService<Horizon> done, final Horizon h, final List<Horizon> open) {
+        int rank = 0;
+        for (Horizon other : open) {
+            if (other.steps < h.steps) {
+                rank++;
+            }
+        }
+        final long budget = Math.max(10, (long) (this.slice * Math.pow(this.rate, rank)) << Math.min(h.attempts, 20));
+        done.submit(() -> {
+            try {
+                h.last = h.obsolete ? Status.TIMEOUT : h.run(budget);
+            } catch (CancellationException e) {
+                // The deadline of the search is over
+                h.last = Status.TIMEOUT;
+            } catch (Exception e) {
+                h.error = e;
+                h.last = Status.FAILED;
+            }
+            return h;
+        });
+    }
+
+    private static boolean isOpen(final List<Horizon> open, int steps) {
+        for (Horizon h : open) {
+            if (h.steps == steps) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This enumeration defines how the planner chooses the next horizon to query. Until a plan is found the horizon
+ * grows from the last one proven UNSAT; once a plan is found at some horizon, the horizons between the greatest one
+ * proven UNSAT and it may be bisected to prove that no shorter horizon has a plan. All the horizons share the
+ * encoding of the longest one (see SATEncoding.extend()): the goal of each horizon is selected by assumption.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public enum HorizonStrategy {
+
+    /**
+     * One step more after each UNSAT horizon: the first plan found has the least number of steps.
+     */
+    LINEAR {
+        @Override
+        public int grow(int steps, double rate) {
+            return steps + 1;
+        }
+    },
+
+    /**
+     * The horizon is multiplied by the rate after each UNSAT horizon (at least one step more).
+     */
+    GEOMETRIC {
+        @Override
+        public int grow(int steps, double rate) {
+            return Math.max(steps + 1, (int) Math.ceil(steps * rate));
+        }
+    },
+
+    /**
+     * The horizon doubles after each UNSAT horizon, then the horizons below the first plan are always bisected.
+     */
+    DOUBLING {
+        @Override
+        public int grow(int steps, double rate) {
+            return Math.max(steps + 1, 2 * steps);
+        }
+
+        @Override
+        public boolean isBisecting() {
+            return true;
+        }
+    };
+
+    /**
+     * Horizon to query after the horizon steps is proven UNSAT, no plan being known.
+     *
+     * @param steps the last horizon, proven UNSAT.
+     * @param rate  the rate of the geometric strategy.
+     * @return a horizon greater than steps.
+     */
+    public abstract int grow(int steps, double rate);
+
+    /**
+     * True if the horizons below the first plan found are bisected even if the optimality is not required.
+     */
+    public boolean isBisecting() {
+        return false;
+    }
+
+    /**
+     * Next horizon to query.
+     *
+     * @param unsat   the greatest horizon proven UNSAT (or known to be from a lower bound).
+     * @param sat     the least horizon proven SAT, 0 if none.
+     * @param max     the greatest horizon that may be queried.
+     * @param rate    the rate of the geometric strategy.
+     * @param optimal if true, proves that no horizon below the least SAT one has a plan.
+     * @return the next horizon, or 0 if the search is over.
+     */
+    public int next(int unsat, int sat, int max, double rate, boolean optimal) {
+        if (sat == 0) {
+            final int steps = Math.min(max, grow(unsat, rate));
+            return steps > unsat ? steps : 0;
+        }
+        if ((optimal || isBisecting()) && sat - unsat > 1) {
+            return unsat + (sat - unsat) / 2;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,295 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * This class implements the synthesis of state invariants of a grounded planning problem. They hold in every
+ * reachable state, whatever the step semantics, and are added to every step of the encoding as redundant clauses.
+ *
+ * The h2 mutexes are the pairs of fluents that are each reachable but never true together: the reachable pairs are
+ * computed by a fixpoint from the pairs of the initial state, an action making a pair reachable when its
+ * preconditions are pairwise reachable and either it adds both fluents, or it adds one and leaves the other, which
+ * is reachable together with its preconditions, untouched. Negative preconditions are ignored, which only makes
+ * more pairs reachable.
+ *
+ * The exactly-one groups are candidate sets of fluents linked by the actions that delete a fluent of their
+ * preconditions and add another one with the same first argument (a package moving from a place to a truck, a
+ * truck from a place to another). A candidate is kept only if exactly one of its fluents is true in the initial
+ * state and every action either leaves it untouched, or deletes one of its fluents that it requires and adds
+ * another one, or only adds fluents that it requires.
+ *
+ * @version 0.1 - 22.04.2024
+ */
+public final class Invariants {
+
+    private final int nb_fluents;
+
+    /*
+     * Symmetric matrix of the h2 mutexes (only the reachable fluents have mutexes)
+     */
+    private final BitSet[] mutex;
+    private int nb_mutexes;
+
+    /*
+     * Fluents of each exactly-one group, sorted
+     */
+    private final List<int[]> groups = new ArrayList<int[]>();
+
+    public Invariants(final ActionTable table) {
+        this.nb_fluents = table.getNbFluents();
+        this.mutex = h2(table);
+        for (int p = 0; p < this.nb_fluents; p++) {
+            this.nb_mutexes += this.mutex[p].cardinality();
+        }
+        this.nb_mutexes /= 2;
+        synthesizeGroups(table);
+    }
+
+    public boolean isMutex(int p, int q) {
+        return this.mutex[p].get(q);
+    }
+
+    /**
+     * Fluents mutex with p, as a live view: it must not be modified.
+     */
+    public BitSet getMutexes(int p) {
+        return this.mutex[p];
+    }
+
+    public int getNbMutexes() {
+        return this.nb_mutexes;
+    }
+
+    public List<int[]> getGroups() {
+        return this.groups;
+    }
+
+    /*
+     * Fixpoint of the reachable pairs, then mutex = reachable fluents of an unreachable pair
+     */
+    private BitSet[] h2(final ActionTable table) {
+        final int nb_actions = table.getNbActions();
+        final boolean[] reachable = new boolean[this.nb_fluents];
+        final BitSet[] pairs = new BitSet[this.nb_fluents];
+        for (int f = 0; f < this.nb_fluents; f++) {
+            pairs[f] = new BitSet();
+        }
+        final int[] init = table.getInitialState();
+        for (int p : init) {
+            reachable[p] = true;
+            for (int q : init) {
+                pairs[p].set(q);
+            }
+        }
+        final boolean[] touched = new boolean[this.nb_fluents];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int a = 0; a < nb_actions; a++) {
+                final int[] pre = table.getPositivePreconditions(a);
+                if (!isReachable(pre, reachable, pairs)) {
+                    continue;
+                }
+                final int[] add = table.getAddEffects(a);
+                for (int p : add) {
+                    if (!reachable[p]) {
+                        reachable[p] = true;
+                        pairs[p].set(p);
+                        changed = true;
+                    }
+                    for (int q : add) {
+                        changed |= pair(pairs, p, q);
+                    }
+                }
+                // A fluent left untouched by the action and reachable with all its preconditions
+                for (int f : add) {
+                    touched[f] = true;
+                }
+                for (int f : table.getDeleteEffects(a)) {
+                    touched[f] = true;
+                }
+                final BitSet candidates = pre.length > 0 ? pairs[pre[0]] : null;
+                for (int q = candidates == null ? nextReachable(reachable, 0) : candidates.nextSetBit(0); q >= 0;
+                     q = candidates == null ? nextReachable(reachable, q + 1) : candidates.nextSetBit(q + 1)) {
+                    if (touched[q] || !isReachable(q, pre, pairs)) {
+                        continue;
+                    }
+                    for (int p : add) {
+                        changed |= pair(pairs, p, q);
+                    }
+                }
+                for (int f : add) {
+                    touched[f] = false;
+                }
+                for (int f : table.getDeleteEffects(a)) {
+                    touched[f] = false;
+                }
+            }
+        }
+        final BitSet[] mutex = new BitSet[this.nb_fluents];
+        final BitSet all = new BitSet(this.nb_fluents);
+        for (int f = 0; f < this.nb_fluents; f++) {
+            if (reachable[f]) {
+                all.set(f);
+            }
+        }
+        for (int p = 0; p < this.nb_fluents; p++) {
+            mutex[p] = new BitSet();
+            if (reachable[p]) {
+                mutex[p].or(all);
+                mutex[p].andNot(pairs[p]);
+            }
+        }
+        return mutex;
+    }
+
+    private static int nextReachable(final boolean[] reachable, int from) {
+        for (int f = from; f < reachable.length; f++) {
+            if (reachable[f]) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isReachable(final int[] fluents, final boolean[] reachable, final BitSet[] pairs) {
+        for (int i = 0; i < fluents.length; i++) {
+            if (!reachable[fluents[i]]) {
+                return false;
+            }
+            for (int j = i + 1; j < fluents.length; j++) {
+                if (!pairs[fluents[i]].get(fluents[j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isReachable(int fluent, final int[] fluents, final BitSet[] pairs) {
+        for (int other : fluents) {
+            if (!pairs[fluent].get(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean pair(final BitSet[] pairs, int p, int q) {
+        if (pairs[p].get(q)) {
+            return false;
+        }
+        pairs[p].set(q);
+        pairs[q].set(p);
+        return true;
+    }
+
+    /*
+     * Candidate groups are the connected components of the transitions, kept if they are verified
+     */
+    private void synthesizeGroups(final ActionTable table) {
+        final int nb_actions = table.getNbActions();
+        // Union-find over the fluents
+        final int[] parent = new int[this.nb_fluents];
+        for (int f = 0; f < this.nb_fluents; f++) {
+            parent[f] = f;
+        }
+        final boolean[] linked = new boolean[this.nb_fluents];
+        for (int a = 0; a < nb_actions; a++) {
+            for (int d : table.getDeleteEffects(a)) {
+                if (Arrays.binarySearch(table.getPositivePreconditions(a), d) < 0 || table.getOwner(d) < 0) {
+                    continue;
+                }
+                for (int p : table.getAddEffects(a)) {
+                    if (table.getOwner(p) == table.getOwner(d)) {
+                        parent[find(parent, d)] = find(parent, p);
+                        linked[d] = true;
+                        linked[p] = true;
+                    }
+                }
+            }
+        }
+        final int[] size = new int[this.nb_fluents];
+        for (int f = 0; f < this.nb_fluents; f++) {
+            if (linked[f]) {
+                size[find(parent, f)]++;
+            }
+        }
+        final int[][] members = new int[this.nb_fluents][];
+        for (int f = 0; f < this.nb_fluents; f++) {
+            if (linked[f]) {
+                final int root = find(parent, f);
+                if (members[root] == null) {
+                    members[root] = new int[size[root]];
+                    size[root] = 0;
+                }
+                members[root][size[root]++] = f;
+            }
+        }
+        final int[] group = new int[this.nb_fluents];
+        for (int root = 0; root < this.nb_fluents; root++) {
+            if (members[root] != null) {
+                Arrays.fill(group, -1);
+                for (int f : members[root]) {
+                    group[f] = root;
+                }
+                if (isExactlyOne(table, group, root)) {
+                    this.groups.add(members[root]);
+                }
+            }
+        }
+    }
+
+    private static int find(final int[] parent, int f) {
+        while (parent[f] != f) {
+            parent[f] = parent[parent[f]];
+            f = parent[f];
+        }
+        return f;
+    }
+
+    private static boolean isExactlyOne(final ActionTable table, final int[] group, int id) {
+        int count = 0;
+        for (int f : table.getInitialState()) {
+            if (group[f] == id) {
+                count++;
+            }
+        }
+        if (count != 1) {
+            return false;
+        }
+        for (int a = 0; a < table.getNbActions(); a++) {
+            final int[] pre = table.getPositivePreconditions(a);
+            int added = -1;
+            int nb_added = 0;
+            boolean required = true;
+            for (int f : table.getAddEffects(a)) {
+                if (group[f] == id) {
+                    added = f;
+                    nb_added++;
+                    required &= Arrays.binarySearch(pre, f) >= 0;
+                }
+            }
+            int deleted = -1;
+            int nb_deleted = 0;
+            for (int f : table.getDeleteEffects(a)) {
+                if (group[f] == id) {
+                    deleted = f;
+                    nb_deleted++;
+                }
+            }
+            if (nb_deleted == 0 && (nb_added == 0 || required)) {
+                // Untouched, or re-adding a fluent that is already the true one
+                continue;
+            }
+            if (nb_added == 1 && nb_deleted == 1 && added != deleted && Arrays.binarySearch(pre, deleted) >= 0) {
+                continue;
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,425 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.Arrays;
+
+/**
+ * This class implements the landmark analysis of a grounded planning problem, in its delete relaxation where the
+ * negative preconditions and goals are ignored. Every plan is a relaxed plan, so what holds for the relaxed plans
+ * holds for the plans:
+ *
+ * - the fact landmarks of Zhu and Givan: the label of a fluent is the set of fluents true at some step before it is
+ *   first achieved, propagated to a fixpoint through the actions; the landmarks are the labels of the goal fluents.
+ *   A landmark l in the label of a landmark m is ordered before it: l is true at some step before the first step
+ *   where m is, since the preconditions of an action hold at its step in every semantics of the encoding.
+ * - the action landmarks: the only action that can first achieve a fact landmark.
+ * - the LM-cut bound of Helmert and Domshlak, admissible: no plan has fewer actions. Its first h^max value is the
+ *   number of layers of the relaxed planning graph, which no plan can skip whatever actions share a step.
+ *
+ * The labels take one bit per pair of fluents: the fact landmarks are not computed above MAX_FLUENTS fluents, nor
+ * when only the bounds are asked for.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class Landmarks {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /*
+     * Above this number of fluents the labels would take more than 32 MB
+     */
+    private static final int MAX_FLUENTS = 1 << 14;
+
+    /*
+     * Fact landmarks false in the initial state, the pairs (l, m) of them with l ordered before m, and the action
+     * landmarks
+     */
+    private final int[] facts;
+    private final int[] orderings;
+    private final int[] actions;
+
+    /*
+     * LM-cut bound on the number of actions and h^max bound on the number of steps of a plan
+     */
+    private int lowerBound;
+    private int depth;
+
+    /**
+     * Analyses the table: its LM-cut and h^max bounds, and its fact and action landmarks if they are asked for.
+     *
+     * @param table     the action table.
+     * @param landmarks whether the fact and action landmarks are computed, or only the bounds.
+     */
+    public Landmarks(final ActionTable table, final boolean landmarks) {
+        final int nb_fluents = table.getNbFluents();
+        cut(table);
+        if (!landmarks || this.lowerBound == UNREACHABLE || nb_fluents > MAX_FLUENTS) {
+            this.facts = new int[0];
+            this.orderings = new int[0];
+            this.actions = new int[0];
+            return;
+        }
+
+        // Labels of the fluents, one bitset each; null until the fluent is reached
+        final int words = (nb_fluents + 63) >>> 6;
+        final long[][] label = new long[nb_fluents][];
+        final boolean[] init = new boolean[nb_fluents];
+        for (int f : table.getInitialState()) {
+            init[f] = true;
+            label[f] = new long[words];
+            set(label[f], f);
+        }
+        final long[] union = new long[words];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int a = 0; a < table.getNbActions(); a++) {
+                if (!actionLabel(table, a, label, union)) {
+                    continue;
+                }
+                for (int f : table.getAddEffects(a)) {
+                    if (init[f]) {
+                        continue;
+                    }
+                    if (label[f] == null) {
+                        label[f] = union.clone();
+                        set(label[f], f);
+                        changed = true;
+                    } else {
+                        for (int w = 0; w < words; w++) {
+                            final long meet = label[f][w] & (union[w] | (w == f >>> 6 ? 1L << f : 0L));
+                            if (meet != label[f][w]) {
+                                label[f][w] = meet;
+                                changed = true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Landmarks of the goal
+        final long[] goal = new long[words];
+        for (int g : table.getPositiveGoal()) {
+            for (int w = 0; w < words; w++) {
+                goal[w] |= label[g][w];
+            }
+        }
+        int n = 0;
+        final int[] facts = new int[nb_fluents];
+        for (int f = 0; f < nb_fluents; f++) {
+            if (get(goal, f) && !init[f]) {
+                facts[n++] = f;
+            }
+        }
+        this.facts = Arrays.copyOf(facts, n);
+
+        int nb_orderings = 0;
+        for (int m : this.facts) {
+            for (int l : this.facts) {
+                if (l != m && get(label[m], l)) {
+                    nb_orderings++;
+                }
+            }
+        }
+        this.orderings = new int[2 * nb_orderings];
+        n = 0;
+        for (int m : this.facts) {
+            for (int l : this.facts) {
+                if (l != m && get(label[m], l)) {
+                    this.orderings[n++] = l;
+                    this.orderings[n++] = m;
+                }
+            }
+        }
+
+        // The first achievers of a landmark do not need it before
+        final int[] actions = new int[this.facts.length];
+        n = 0;
+        final boolean[] landmark = new boolean[table.getNbActions()];
+        for (int f : this.facts) {
+            int first = -1;
+            int nb_first = 0;
+            for (int a : table.getAdders(f)) {
+                if (actionLabel(table, a, label, union) && !get(union, f)) {
+                    first = a;
+                    nb_first++;
+                }
+            }
+            if (nb_first == 1 && !landmark[first]) {
+                landmark[first] = true;
+                actions[n++] = first;
+            }
+        }
+        this.actions = Arrays.copyOf(actions, n);
+        Arrays.sort(this.actions);
+    }
+
+    /**
+     * Fact landmarks of the goal false in the initial state, in increasing order.
+     */
+    public int[] getFacts() {
+        return this.facts;
+    }
+
+    /**
+     * Orderings of the fact landmarks, flattened: the landmark orderings[2i] is true at some step before the first
+     * step where orderings[2i+1] is.
+     */
+    public int[] getOrderings() {
+        return this.orderings;
+    }
+
+    /**
+     * Actions applied in every plan, in increasing order.
+     */
+    public int[] getActions() {
+        return this.actions;
+    }
+
+    /**
+     * LM-cut value of the initial state: a lower bound of the number of actions of a plan, UNREACHABLE if the goal
+     * cannot be reached.
+     */
+    public int getLowerBound() {
+        return this.lowerBound;
+    }
+
+    /**
+     * h^max value of the initial state: a lower bound of the number of steps of a plan in every semantics,
+     * UNREACHABLE if the goal cannot be reached.
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /*
+     * Union of the labels of the preconditions of an action, false if one of them is not reached yet
+     */
+    private static boolean actionLabel(final ActionTable table, int a, final long[][] label, final long[] union) {
+        Arrays.fill(union, 0L);
+        for (int p : table.getPositivePreconditions(a)) {
+            if (label[p] == null) {
+                return false;
+            }
+            for (int w = 0; w < union.length; w++) {
+                union[w] |= label[p][w];
+            }
+        }
+        return true;
+    }
+
+    /*
+     * LM-cut with unit costs: h^max is computed with the current costs, the cut between the zone of the goal and
+     * the fluents reachable from the initial state without entering it is a disjunctive action landmark, its least
+     * cost is added to the bound and removed from the costs of its actions, until h^max of the goal is 0.
+     */
+    private void cut(final ActionTable table) {
+        final int nb_fluents = table.getNbFluents();
+        final int nb_actions = table.getNbActions();
+        final int[] cost = new int[nb_actions];
+        Arrays.fill(cost, 1);
+        final int[] hmax = new int[nb_fluents];
+        final int[] pcf = new int[nb_actions];
+        final int[] count = new int[nb_actions];
+        final int[] first = new int[nb_fluents + 3];
+        final int[] supported = new int[nb_actions];
+        final boolean[] zone = new boolean[nb_fluents];
+        final boolean[] reached = new boolean[nb_fluents];
+        final boolean[] cut = new boolean[nb_actions];
+        final int[] queue = new int[nb_fluents];
+        final Heap heap = new Heap();
+
+        boolean leading = true;
+        while (true) {
+            final int goal = hmax(table, cost, hmax, pcf, count, heap);
+            if (goal == UNREACHABLE) {
+                this.lowerBound = UNREACHABLE;
+                this.depth = UNREACHABLE;
+                return;
+            }
+            if (leading) {
+                this.depth = goal < 0 ? 0 : hmax[goal];
+                leading = false;
+            }
+            if (goal < 0 || hmax[goal] == 0) {
+                return;
+            }
+
+            // Actions by precondition choice, -1 (no precondition) in the last bucket
+            Arrays.fill(first, 0);
+            for (int a = 0; a < nb_actions; a++) {
+                if (count[a] == 0) {
+                    first[(pcf[a] < 0 ? nb_fluents : pcf[a]) + 2]++;
+                }
+            }
+            for (int f = 0; f <= nb_fluents; f++) {
+                first[f + 2] += first[f + 1];
+            }
+            for (int a = 0; a < nb_actions; a++) {
+                if (count[a] == 0) {
+                    supported[first[(pcf[a] < 0 ? nb_fluents : pcf[a]) + 1]++] = a;
+                }
+            }
+
+            // Zone of the goal: the fluents that reach it through actions of cost 0
+            Arrays.fill(zone, false);
+            int head = 0;
+            int tail = 0;
+            zone[goal] = true;
+            queue[tail++] = goal;
+            while (head < tail) {
+                final int f = queue[head++];
+                for (int a : table.getAdders(f)) {
+                    if (count[a] == 0 && cost[a] == 0 && pcf[a] >= 0 && !zone[pcf[a]]) {
+                        zone[pcf[a]] = true;
+                        queue[tail++] = pcf[a];
+                    }
+                }
+            }
+
+            // Fluents reachable from the initial state without entering the zone, and the cut
+            Arrays.fill(reached, false);
+            Arrays.fill(cut, false);
+            tail = 0;
+            for (int f : table.getInitialState()) {
+                reached[f] = true;
+                queue[tail++] = f;
+            }
+            int m = Integer.MAX_VALUE;
+            for (int k = -1; k < tail; k++) {
+                final int f = k < 0 ? nb_fluents : queue[k];
+                for (int i = first[f]; i < first[f + 1]; i++) {
+                    final int a = supported[i];
+                    for (int g : table.getAddEffects(a)) {
+                        if (zone[g]) {
+                            if (!cut[a]) {
+                                cut[a] = true;
+                                m = Math.min(m, cost[a]);
+                            }
+                        } else if (!reached[g]) {
+                            reached[g] = true;
+                            queue[tail++] = g;
+                        }
+                    }
+                }
+            }
+            this.lowerBound += m;
+            for (int a = 0; a < nb_actions; a++) {
+                if (cut[a]) {
+                    cost[a] -= m;
+                }
+            }
+        }
+    }
+
+    /*
+     * h^max of the fluents with the given action costs (Dijkstra), the precondition chosen by each action (the
+     * last one settled, -1 if it has none) and count[a] == 0 for the reached actions. Returns the goal fluent of
+     * greatest h^max, -1 if there is no positive goal, UNREACHABLE if one of them is not reached.
+     */
+    private static int hmax(final ActionTable table, final int[] cost, final int[] hmax, final int[] pcf,
+            final int[] count, final Heap heap) {
+        Arrays.fill(hmax, UNREACHABLE);
+        heap.clear();
+        for (int f : table.getInitialState()) {
+            hmax[f] = 0;
+            heap.push(0, f);
+        }
+        for (int a = 0; a < table.getNbActions(); a++) {
+            count[a] = table.getPositivePreconditions(a).length;
+            if (count[a] == 0) {
+                pcf[a] = -1;
+                apply(table, a, cost[a], hmax, heap);
+            }
+        }
+        while (!heap.isEmpty()) {
+            final long top = heap.pop();
+            final int d = (int) (top >>> 32);
+            final int f = (int) top;
+            if (d > hmax[f]) {
+                continue;
+            }
+            for (int a : table.getRequirers(f)) {
+                if (--count[a] == 0) {
+                    pcf[a] = f;
+                    apply(table, a, d + cost[a], hmax, heap);
+                }
+            }
+        }
+        int goal = -1;
+        for (int g : table.getPositiveGoal()) {
+            if (hmax[g] == UNREACHABLE) {
+                return UNREACHABLE;
+            }
+            if (goal < 0 || hmax[g] > hmax[goal]) {
+                goal = g;
+            }
+        }
+        return goal;
+    }
+
+    private static void apply(final ActionTable table, int a, int d, final int[] hmax, final Heap heap) {
+        for (int g : table.getAddEffects(a)) {
+            if (d < hmax[g]) {
+                hmax[g] = d;
+                heap.push(d, g);
+            }
+        }
+    }
+
+    /*
+     * Binary min-heap of (distance, fluent) packed in longs, the stale entries being skipped when popped
+     */
+    private static final class Heap {
+        private long[] keys = new long[64];
+        private int size;
+
+        private void clear() {
+            this.size = 0;
+        }
+
+        private boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        private void push(int d, int f) {
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+            }
+            final long key = ((long) d << 32) | f;
+            int i = this.size++;
+            while (i > 0 && this.keys[(i - 1) >>> 1] > key) {
+                this.keys[i] = this.keys[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            this.keys[i] = key;
+        }
+
+        private long pop() {
+            final long top = this.keys[0];
+            final long last = this.keys[--this.size];
+            int i = 0;
+            while (2 * i + 1 < this.size) {
+                int c = 2 * i + 1;
+                if (c + 1 < this.size && this.keys[c + 1] < this.keys[c]) {
+                    c++;
+                }
+                if (this.keys[c] >= last) {
+                    break;
+                }
+                this.keys[i] = this.keys[c];
+                i = c;
+            }
+            this.keys[i] = last;
+            return top;
+        }
+    }
+
+    private static boolean get(final long[] set, int f) {
+        return (set[f >>> 6] & (1L << f)) != 0;
+    }
+
+    private static void set(final long[] set, int f) {
+        set[f >>> 6] |= 1L << f;
+    }
+}
@@ -0,0 +1,75 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This class implements the validation of the plans decoded from the models of the SAT solver. The plan is simulated
+ * from the initial state on the action table of the problem, the state being a bitset of longs: each action must
+ * have its preconditions satisfied, deletes then adds its effects as PDDL4J does, and the last state must satisfy the
+ * goal. An invalid plan means a broken encoding, caught here rather than by an external validator.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class PlanValidator {
+
+    private PlanValidator() {
+    }
+
+    /**
+     * Simulates a plan.
+     *
+     * @param table the action table of the problem.
+     * @param plan  the indices of the actions of the plan, in order.
+     * @throws IllegalStateException if an action is not applicable or if the plan does not reach the goal.
+     */
+    public static void validate(final ActionTable table, final int[] plan) {
+        final long[] state = new long[(table.getNbFluents() + 63) >>> 6];
+        for (int f : table.getInitialState()) {
+            set(state, f);
+        }
+        for (int i = 0; i < plan.length; i++) {
+            final int a = plan[i];
+            if (a < 0 || a >= table.getNbActions()) {
+                throw new IllegalStateException("Invalid plan: step " + i + " has no action " + a);
+            }
+            for (int f : table.getPositivePreconditions(a)) {
+                if (!get(state, f)) {
+                    throw new IllegalStateException("Invalid plan: precondition " + f + " of action " + a
+                        + " is false at step " + i);
+                }
+            }
+            for (int f : table.getNegativePreconditions(a)) {
+                if (get(state, f)) {
+                    throw new IllegalStateException("Invalid plan: negative precondition " + f + " of action " + a
+                        + " is true at step " + i);
+                }
+            }
+            for (int f : table.getDeleteEffects(a)) {
+                clear(state, f);
+            }
+            for (int f : table.getAddEffects(a)) {
+                set(state, f);
+            }
+        }
+        for (int f : table.getPositiveGoal()) {
+            if (!get(state, f)) {
+                throw new IllegalStateException("Invalid plan: goal fluent " + f + " is false at the end");
+            }
+        }
+        for (int f : table.getNegativeGoal()) {
+            if (get(state, f)) {
+                throw new IllegalStateException("Invalid plan: negative goal fluent " + f + " is true at the end");
+            }
+        }
+    }
+
+    private static boolean get(final long[] state, int fluent) {
+        return (state[fluent >>> 6] & (1L << fluent)) != 0;
+    }
+
+    private static void set(final long[] state, int fluent) {
+        state[fluent >>> 6] |= 1L << fluent;
+    }
+
+    private static void clear(final long[] state, int fluent) {
+        state[fluent >>> 6] &= ~(1L << fluent);
+    }
+}
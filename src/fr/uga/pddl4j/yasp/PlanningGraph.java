@@ -0,0 +1,327 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class implements a forward reachability analysis of a planning problem, layered like the SAT encoding: the
+ * layer 1 is the initial state and the actions of step t lead from the layer t to the layer t+1. It gives the first
+ * layer where each fluent may be true, where each fluent may be false and where each action may be applied. These
+ * sets only grow from layer to layer, so that any variable of a layer below its first one can be fixed.
+ *
+ * Optionally, Graphplan mutexes between the positive fluents of a layer prune actions whose preconditions cannot
+ * hold together. They depend on the step semantics: every pair of actions is mutex in the sequential semantics and
+ * interfering actions are mutex in the Forall-step semantics. The Exists-step semantics allows interfering actions
+ * in the same step, so the mutexes are not computed for it.
+ *
+ * @version 0.1 - 21.04.2024
+ */
+public final class PlanningGraph {
+
+    /**
+     * Layer of the fluents and actions that are never reachable.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final ActionTable table;
+    private final int nb_fluents;
+    private final int nb_actions;
+
+    /*
+     * First layer where each fluent may be true, may be false, and where each action may be applied
+     */
+    private final int[] trueLayer;
+    private final int[] falseLayer;
+    private final int[] actionLayer;
+
+    /*
+     * First layer where the goal may hold, and layer from which nothing changes any more
+     */
+    private int goalLayer = UNREACHABLE;
+    private int lastLayer;
+
+    /*
+     * Mutexes between the positive fluents of the current layer (null when they are not computed)
+     */
+    private final StepSemantics semantics;
+    private BitSet[] mutex;
+
+    public PlanningGraph(final ActionTable table, final StepSemantics semantics, final boolean mutexes) {
+        this.table = table;
+        this.nb_fluents = table.getNbFluents();
+        this.nb_actions = table.getNbActions();
+        this.semantics = semantics;
+        this.trueLayer = new int[this.nb_fluents];
+        this.falseLayer = new int[this.nb_fluents];
+        this.actionLayer = new int[this.nb_actions];
+        Arrays.fill(this.trueLayer, UNREACHABLE);
+        Arrays.fill(this.falseLayer, 1);
+        Arrays.fill(this.actionLayer, UNREACHABLE);
+        for (int fluent : table.getInitialState()) {
+            this.trueLayer[fluent] = 1;
+            this.falseLayer[fluent] = UNREACHABLE;
+        }
+        if (mutexes && semantics != StepSemantics.EXISTS) {
+            this.mutex = new BitSet[this.nb_fluents];
+            for (int f = 0; f < this.nb_fluents; f++) {
+                this.mutex[f] = new BitSet();
+            }
+        }
+        expand();
+        // The mutexes are only needed during the expansion
+        this.mutex = null;
+    }
+
+    /**
+     * Can the fluent be true in the layer?
+     */
+    public boolean isReachable(int fluent, int layer) {
+        return this.trueLayer[fluent] <= layer;
+    }
+
+    /**
+     * Can the fluent be false in the layer?
+     */
+    public boolean isFalsifiable(int fluent, int layer) {
+        return this.falseLayer[fluent] <= layer;
+    }
+
+    /**
+     * Can the action be applied at the step?
+     */
+    public boolean isApplicable(int action, int step) {
+        return this.actionLayer[action] <= step;
+    }
+
+    /**
+     * First layer where the goal may hold: a lower bound on the number of steps of the encoding (UNREACHABLE if the
+     * problem has no solution).
+     */
+    public int getGoalLayer() {
+        return this.goalLayer;
+    }
+
+    /**
+     * Layer from which the graph levels off: all the layers beyond are identical.
+     */
+    public int getLastLayer() {
+        return this.lastLayer;
+    }
+
+    /*
+     * Builds the layers until they level off
+     */
+    private void expand() {
+        final int[] applicable = new int[this.nb_actions];
+        for (int layer = 1; ; layer++) {
+            if (this.goalLayer == UNREACHABLE && goalHolds(layer)) {
+                this.goalLayer = layer;
+            }
+            // Actions of the step leading from this layer to the next one
+            int n = 0;
+            boolean changed = false;
+            for (int a = 0; a < this.nb_actions; a++) {
+                if (this.actionLayer[a] <= layer) {
+                    applicable[n++] = a;
+                } else if (isApplicable(a, layer, this.mutex)) {
+                    this.actionLayer[a] = layer;
+                    applicable[n++] = a;
+                    changed = true;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                final int a = applicable[i];
+                for (int fluent : this.table.getAddEffects(a)) {
+                    if (this.trueLayer[fluent] == UNREACHABLE) {
+                        this.trueLayer[fluent] = layer + 1;
+                        changed = true;
+                    }
+                }
+                for (int fluent : this.table.getDeleteEffects(a)) {
+                    if (this.falseLayer[fluent] == UNREACHABLE) {
+                        this.falseLayer[fluent] = layer + 1;
+                        changed = true;
+                    }
+                }
+            }
+            if (this.mutex != null) {
+                changed |= nextMutexes(layer, applicable, n);
+            }
+            if (!changed) {
+                this.lastLayer = layer;
+                return;
+            }
+        }
+    }
+
+    private boolean goalHolds(int layer) {
+        final int[] goal = this.table.getPositiveGoal();
+        for (int i = 0; i < goal.length; i++) {
+            if (this.trueLayer[goal[i]] > layer) {
+                return false;
+            }
+            if (this.mutex != null) {
+                for (int j = i + 1; j < goal.length; j++) {
+                    if (this.mutex[goal[i]].get(goal[j])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int fluent : this.table.getNegativeGoal()) {
+            if (this.falseLayer[fluent] > layer) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isApplicable(int a, int layer, final BitSet[] mutex) {
+        final int[] pre = this.table.getPositivePreconditions(a);
+        for (int i = 0; i < pre.length; i++) {
+            if (this.trueLayer[pre[i]] > layer) {
+                return false;
+            }
+            if (mutex != null) {
+                for (int j = i + 1; j < pre.length; j++) {
+                    if (mutex[pre[i]].get(pre[j])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int fluent : this.table.getNegativePreconditions(a)) {
+            if (this.falseLayer[fluent] > layer) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Graphplan rule: two fluents of the next layer are mutex unless they have a pair of compatible achievers.
+     * An achiever is an action adding the fluent or the no-op keeping it. Returns true if the mutexes changed.
+     */
+    private boolean nextMutexes(int layer, final int[] applicable, int n) {
+        final BitSet[] compatible = new BitSet[this.nb_fluents];
+        for (int f = 0; f < this.nb_fluents; f++) {
+            compatible[f] = new BitSet();
+        }
+        // Two no-ops
+        for (int p = 0; p < this.nb_fluents; p++) {
+            if (this.trueLayer[p] <= layer) {
+                for (int q = p + 1; q < this.nb_fluents; q++) {
+                    if (this.trueLayer[q] <= layer && !this.mutex[p].get(q)) {
+                        pair(compatible, p, q);
+                    }
+                }
+            }
+        }
+        final boolean[] deleted = new boolean[this.nb_fluents];
+        for (int i = 0; i < n; i++) {
+            final int a = applicable[i];
+            final int[] add = this.table.getAddEffects(a);
+            // The same action
+            for (int x = 0; x < add.length; x++) {
+                for (int y = x + 1; y < add.length; y++) {
+                    pair(compatible, add[x], add[y]);
+                }
+            }
+            // An action and a no-op
+            for (int fluent : this.table.getDeleteEffects(a)) {
+                deleted[fluent] = true;
+            }
+            for (int q = 0; q < this.nb_fluents; q++) {
+                if (this.trueLayer[q] <= layer && !deleted[q] && !isMutex(q, this.table.getPositivePreconditions(a))) {
+                    for (int p : add) {
+                        pair(compatible, p, q);
+                    }
+                }
+            }
+            for (int fluent : this.table.getDeleteEffects(a)) {
+                deleted[fluent] = false;
+            }
+            // Two actions: only in the Forall-step semantics, all the actions are mutex in the sequential one
+            if (this.semantics == StepSemantics.FORALL) {
+                for (int j = i + 1; j < n; j++) {
+                    final int b = applicable[j];
+                    if (!interfere(a, b) && !isMutex(this.table.getPositivePreconditions(a),
+                        this.table.getPositivePreconditions(b))) {
+                        for (int p : add) {
+                            for (int q : this.table.getAddEffects(b)) {
+                                pair(compatible, p, q);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        boolean changed = false;
+        for (int p = 0; p < this.nb_fluents; p++) {
+            if (this.trueLayer[p] <= layer + 1) {
+                for (int q = p + 1; q < this.nb_fluents; q++) {
+                    final boolean mutex = this.trueLayer[q] <= layer + 1 && p != q && !compatible[p].get(q);
+                    if (mutex != this.mutex[p].get(q)) {
+                        this.mutex[p].set(q, mutex);
+                        this.mutex[q].set(p, mutex);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static void pair(final BitSet[] compatible, int p, int q) {
+        compatible[p].set(q);
+        compatible[q].set(p);
+    }
+
+    private boolean isMutex(int fluent, final int[] fluents) {
+        for (int other : fluents) {
+            if (other != fluent && this.mutex[fluent].get(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isMutex(final int[] fluents, final int[] others) {
+        for (int fluent : fluents) {
+            if (isMutex(fluent, others)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * One action deletes a precondition or an add effect of the other, or adds one of its negative preconditions
+     */
+    private boolean interfere(int a, int b) {
+        return intersects(this.table.getDeleteEffects(a), this.table.getPositivePreconditions(b))
+            || intersects(this.table.getDeleteEffects(a), this.table.getAddEffects(b))
+            || intersects(this.table.getAddEffects(a), this.table.getNegativePreconditions(b))
+            || intersects(this.table.getDeleteEffects(b), this.table.getPositivePreconditions(a))
+            || intersects(this.table.getDeleteEffects(b), this.table.getAddEffects(a))
+            || intersects(this.table.getAddEffects(b), this.table.getNegativePreconditions(a));
+    }
+
+    /*
+     * The arrays of the action table are sorted
+     */
+    private static boolean intersects(final int[] x, final int[] y) {
+        int i = 0;
+        int j = 0;
+        while (i < x.length && j < y.length) {
+            if (x[i] == y[j]) {
+                return true;
+            } else if (x[i] < y[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,618 @@
+package fr.uga.pddl4j.yasp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.uga.pddl4j.parser.DefaultParsedProblem;
+import fr.uga.pddl4j.parser.Message;
+import fr.uga.pddl4j.parser.ParsedDomain;
+import fr.uga.pddl4j.parser.ParsedProblem;
+import fr.uga.pddl4j.parser.Parser;
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.planners.Statistics;
+import fr.uga.pddl4j.problem.DefaultProblem;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+
+/**
+ * This class implements a planning server: a long-running JVM answering plan requests over HTTP, so that the JIT
+ * warm-up, the class loading and the parsing of the domains are paid once for all the requests. The requests are
+ * read on a pool of handler threads and solved by at most a given number of planners at once, the others waiting
+ * for a free solver in the order of their arrival. Each planner solves a single request within a wall clock limit,
+ * stopped with YetAnotherSATPlanner.cancel() like the problems of BatchRunner.
+ *
+ * The parsed domains are kept by the SHA-256 of their text, each with the parser that read it, since PDDL4J checks
+ * a problem against the domain of its parser: a request on a known domain only parses its problem.
+ *
+ * POST /plan with a JSON object:
+ *   "domain", "problem"               paths of the PDDL files, relative to the root directory of the server, or
+ *   "domainPddl", "problemPddl"       the PDDL texts themselves (the two forms can be mixed)
+ *   "options"                         planner options for this request only, e.g. "-s forall --horizon doubling"
+ *   "limit"                           wall clock limit in seconds, waiting included, at most the one of the server
+ * A request may only set the options of the encoding and of the horizons (see REQUEST_OPTIONS): the external
+ * solver, the files written by the planner and the threads it runs are those of the command line of the server.
+ * answers a JSON object with the status (SOLVED, UNSOLVED, UNSOLVABLE or TIMEOUT), the plan as a list of actions,
+ * the greatest horizon proven to have no plan (the partial result of a TIMEOUT, see getUnsatSteps() of the planner)
+ * and the times of the phases taken from the Statistics of the planner, in milliseconds:
+ *   {"status":"SOLVED","length":2,"plan":["load-truck p1 t1 l1","drive-truck t1 l1 l2 c1"],"unsatSteps":2,
+ *    "parseMs":12,"encodeMs":8,"searchMs":30,"queueMs":0,"wallMs":51,"message":""}
+ * GET /status answers the number of solvers, of requests running and waiting for a solver, and of domains kept.
+ *
+ * Usage: PlanningServer [options] [planner options]
+ *   --host address       address to listen on (default localhost)
+ *   --port n             port to listen on (default 8080)
+ *   --solvers n          requests solved at once (default: number of processors)
+ *   --threads n          threads reading the requests, waiting ones included (default 4 times the solvers)
+ *   --limit s            wall clock limit per request in seconds (default 600)
+ *   --domains n          parsed domains kept, the least recently used being dropped first (default 64)
+ *   --root dir           directory of the paths of the requests, none being read outside (default: the working one)
+ * The other options are the defaults of the planners (see YetAnotherSATPlanner.configure()).
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class PlanningServer {
+
+    private enum Status { SOLVED, UNSOLVED, UNSOLVABLE, TIMEOUT }
+
+    /*
+     * PDDL4J is not known to parse and instantiate problems safely from several threads
+     */
+    private static final Object PARSER_LOCK = new Object();
+
+    /*
+     * Planner options a request may set. The others run commands (-x), write files (--telemetry, --cache, --clauses)
+     * or start threads beyond the solvers of the server (-t, -e, -p and the scheduling of the horizons).
+     */
+    private static final Set<String> REQUEST_OPTIONS = new HashSet<String>(Arrays.asList("-s", "--semantics", "-a",
+        "--amo", "--horizon", "--growth", "--max-steps", "--reachability", "--mutexes", "--invariants",
+        "--relevance", "--step-relevance", "--symmetry", "--landmarks", "--template"));
+
+    /*
+     * Request rejected before any search: invalid JSON, missing field, invalid options or PDDL errors
+     */
+    private static final class BadRequest extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private BadRequest(final String message) {
+            super(message);
+        }
+    }
+
+    private String host = "localhost";
+    private int port = 8080;
+    private int solvers = Runtime.getRuntime().availableProcessors();
+    private int threads = 0;
+    private long limit = 600;
+    private int domains = 64;
+    private Path root = Paths.get("");
+    private String[] plannerOptions;
+
+    /*
+     * Planners running at once, waiting requests being queued in order
+     */
+    private Semaphore pool;
+
+    /*
+     * A domain read and its parser, which checks the problems against it
+     */
+    private static final class Domain {
+        private final Parser parser;
+        private final ParsedDomain parsed;
+
+        private Domain(final Parser parser, final ParsedDomain parsed) {
+            this.parser = parser;
+            this.parsed = parsed;
+        }
+    }
+
+    /*
+     * Domains read, by the SHA-256 of their text, in the order of their last use (guarded by PARSER_LOCK)
+     */
+    private final LinkedHashMap<String, Domain> parsers = new LinkedHashMap<String, Domain>(16, 0.75f, true);
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Starts the server; it runs until the JVM exits.
+     *
+     * @throws IOException if the address cannot be bound.
+     */
+    private void start() throws IOException {
+        this.pool = new Semaphore(this.solvers, true);
+        final HttpServer server = HttpServer.create(new InetSocketAddress(this.host, this.port), 0);
+        final ExecutorService handlers = Executors.newFixedThreadPool(this.threads);
+        server.setExecutor(handlers);
+        server.createContext("/plan", this::plan);
+        server.createContext("/status", this::status);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            handlers.shutdownNow();
+            this.timer.shutdownNow();
+        }));
+        server.start();
+        System.out.println("Planning server listening on " + server.getAddress() + " with " + this.solvers
+            + " solvers");
+    }
+
+    /*
+     * POST /plan
+     */
+    private void plan(final HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                reply(exchange, 405, error("Use POST"));
+                return;
+            }
+            final Map<String, String> request;
+            try (InputStream in = exchange.getRequestBody()) {
+                request = readObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            reply(exchange, 200, solve(request));
+        } catch (BadRequest e) {
+            reply(exchange, 400, error(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply(exchange, 503, error("Server is stopping"));
+        } catch (Exception | OutOfMemoryError e) {
+            reply(exchange, 500, error(e.toString()));
+        }
+    }
+
+    /*
+     * GET /status
+     */
+    private void status(final HttpExchange exchange) throws IOException {
+        final int domains;
+        synchronized (PARSER_LOCK) {
+            domains = this.parsers.size();
+        }
+        reply(exchange, 200, "{\"solvers\":" + this.solvers + ",\"running\":"
+            + (this.solvers - this.pool.availablePermits()) + ",\"waiting\":" + this.pool.getQueueLength()
+            + ",\"domains\":" + domains + "}");
+    }
+
+    /*
+     * Solves a request once a solver is free and answers its result in JSON
+     */
+    private String solve(final Map<String, String> request) throws Exception {
+        final long start = System.currentTimeMillis();
+        final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+        // The planners of the requests would print their progress all at once
+        planner.setLogLevel(LogLevel.OFF);
+        planner.configure(this.plannerOptions, 0);
+        if (request.containsKey("options")) {
+            final String options = request.get("options").trim();
+            final String[] args = options.isEmpty() ? new String[0] : options.split("\\s+");
+            for (int i = 0; i < args.length; i += 2) {
+                if (!REQUEST_OPTIONS.contains(args[i])) {
+                    throw new BadRequest("Option not allowed in a request: " + args[i]);
+                }
+            }
+            if (!planner.configure(args, 0)) {
+                throw new BadRequest("Invalid planner options: " + options);
+            }
+        }
+        long limit = this.limit;
+        if (request.containsKey("limit")) {
+            try {
+                limit = Math.min(limit, Long.parseLong(request.get("limit")));
+            } catch (NumberFormatException e) {
+                throw new BadRequest("Invalid limit: " + request.get("limit"));
+            }
+            if (limit < 1) {
+                throw new BadRequest("Invalid limit: " + request.get("limit"));
+            }
+        }
+        planner.setTimeout((int) Math.min(Integer.MAX_VALUE, limit));
+
+        // The texts given inline are written to temporary files for PDDL4J
+        final List<Path> temporary = new ArrayList<Path>();
+        try {
+            final Path domain = file(request, "domain", temporary);
+            final Path problem = file(request, "problem", temporary);
+            this.pool.acquire();
+            final long queue = System.currentTimeMillis() - start;
+            ScheduledFuture<?> alarm = null;
+            try {
+                alarm = this.timer.schedule(planner::cancel, limit * 1000 - queue, TimeUnit.MILLISECONDS);
+                return solve(planner, domain, problem, start, limit, queue);
+            } finally {
+                if (alarm != null) {
+                    alarm.cancel(false);
+                }
+                this.pool.release();
+            }
+        } finally {
+            for (Path file : temporary) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /*
+     * Grounds the problem, from the cache of the planner if any, and searches a plan
+     */
+    private String solve(final YetAnotherSATPlanner planner, final Path domain, final Path problem, long start,
+            long limit, long queue) throws Exception {
+        final Statistics stats = planner.getStatistics();
+        final ProblemCache.Entry entry;
+        final Problem pb;
+        if (planner.getCache() != null) {
+            synchronized (PARSER_LOCK) {
+                entry = planner.load(domain.toString(), problem.toString());
+            }
+            pb = null;
+        } else {
+            final long timer = System.currentTimeMillis();
+            entry = null;
+            pb = instantiate(domain, problem);
+            stats.setTimeToParse(System.currentTimeMillis() - timer);
+        }
+        Status status = Status.UNSOLVED;
+        String[] labels = null;
+        if (entry != null ? !entry.isSolvable() : !pb.isSolvable()) {
+            status = Status.UNSOLVABLE;
+        } else if (entry != null) {
+            final int[] plan = planner.solve(entry);
+            if (plan != null) {
+                labels = new String[plan.length];
+                for (int i = 0; i < plan.length; i++) {
+                    labels[i] = entry.getLabel(plan[i]);
+                }
+            }
+        } else {
+            final Plan plan = planner.solve(pb);
+            if (plan != null) {
+                labels = new String[plan.size()];
+                int i = 0;
+                for (Action action : plan.actions()) {
+                    labels[i++] = pb.toShortString(action);
+                }
+            }
+        }
+        final long wall = System.currentTimeMillis() - start;
+        if (labels != null) {
+            status = Status.SOLVED;
+        } else if (status == Status.UNSOLVED && planner.isExpired()) {
+            status = Status.TIMEOUT;
+        }
+
+        final StringBuilder json = new StringBuilder("{\"status\":\"").append(status).append('"');
+        json.append(",\"length\":").append(labels == null ? -1 : labels.length);
+        json.append(",\"plan\":[");
+        for (int i = 0; labels != null && i < labels.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Telemetry.quote(json, labels[i]);
+        }
+        json.append("],\"unsatSteps\":").append(planner.getUnsatSteps());
+        json.append(",\"parseMs\":").append(stats.getTimeToParse());
+        json.append(",\"encodeMs\":").append(stats.getTimeToEncode());
+        json.append(",\"searchMs\":").append(stats.getTimeToSearch());
+        json.append(",\"queueMs\":").append(queue);
+        json.append(",\"wallMs\":").append(wall);
+        json.append(",\"message\":");
+        Telemetry.quote(json, status == Status.UNSOLVABLE ? "Goal can be simplified to FALSE"
+            : status == Status.TIMEOUT ? "Limit of " + limit + " s reached"
+            : status == Status.SOLVED ? "" : "No solution found");
+        return json.append('}').toString();
+    }
+
+    /*
+     * Parses the problem with the parser of its domain, parsing the domain only if it is not kept yet
+     */
+    private Problem instantiate(final Path domain, final Path problem) throws IOException, BadRequest {
+        final String key = hash(Files.readAllBytes(domain));
+        synchronized (PARSER_LOCK) {
+            Domain known = this.parsers.get(key);
+            if (known == null) {
+                final Parser parser = new Parser();
+                parser.setLogLevel(LogLevel.OFF);
+                final ParsedDomain parsed = parser.parseDomain(domain.toFile());
+                if (parsed == null || !parser.getErrorManager().isEmpty()) {
+                    throw new BadRequest("Cannot parse the domain: " + messages(parser));
+                }
+                known = new Domain(parser, parsed);
+                this.parsers.put(key, known);
+                if (this.parsers.size() > this.domains) {
+                    this.parsers.remove(this.parsers.keySet().iterator().next());
+                }
+            }
+            final ParsedProblem parsed = known.parser.parseProblem(problem.toFile());
+            if (parsed == null || !known.parser.getErrorManager().isEmpty()) {
+                // The errors stay in the error manager of the parser: the domain is parsed again next time
+                this.parsers.remove(key);
+                throw new BadRequest("Cannot parse the problem: " + messages(known.parser));
+            }
+            final Problem pb = new DefaultProblem(new DefaultParsedProblem(known.parsed, parsed));
+            pb.instantiate();
+            return pb;
+        }
+    }
+
+    /*
+     * File of the domain or of the problem of a request, written to a temporary file if given inline
+     */
+    private Path file(final Map<String, String> request, final String name, final List<Path> temporary)
+            throws IOException, BadRequest {
+        final String text = request.get(name + "Pddl");
+        if (text != null) {
+            final Path file = Files.createTempFile("yasp-" + name, ".pddl");
+            temporary.add(file);
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            return file;
+        }
+        final String path = request.get(name);
+        if (path == null) {
+            throw new BadRequest("Missing \"" + name + "\" or \"" + name + "Pddl\"");
+        }
+        // The links are followed before the file is checked to be under the root; the answer does not tell
+        // whether a file outside exists
+        Path file;
+        try {
+            file = this.root.resolve(path).toRealPath();
+        } catch (IOException | InvalidPathException e) {
+            file = null;
+        }
+        if (file == null || !file.startsWith(this.root) || !Files.isRegularFile(file)) {
+            throw new BadRequest("No such file under the root of the server: " + path);
+        }
+        return file;
+    }
+
+    private static String messages(final Parser parser) {
+        final StringBuilder str = new StringBuilder();
+        for (Message m : parser.getErrorManager().getMessages()) {
+            str.append(m.toString().trim()).append(' ');
+        }
+        return str.toString().trim();
+    }
+
+    private static void reply(final HttpExchange exchange, int code, final String json) throws IOException {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String error(final String message) {
+        final StringBuilder json = new StringBuilder("{\"error\":");
+        Telemetry.quote(json, message == null ? "" : message);
+        return json.append('}').toString();
+    }
+
+    /*
+     * Reads a flat JSON object: its strings, numbers and booleans are returned as strings, null as absent
+     */
+    private static Map<String, String> readObject(final String json) throws BadRequest {
+        final Map<String, String> object = new HashMap<String, String>();
+        final int[] at = {skip(json, 0)};
+        expect(json, at, '{');
+        if (peek(json, at) == '}') {
+            at[0]++;
+        } else {
+            while (true) {
+                final String key = readString(json, at);
+                expect(json, at, ':');
+                final String value;
+                if (peek(json, at) == '"') {
+                    value = readString(json, at);
+                } else {
+                    final int from = at[0];
+                    while (at[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(at[0])) < 0) {
+                        at[0]++;
+                    }
+                    final String literal = json.substring(from, at[0]);
+                    if (!literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?|true|false|null")) {
+                        throw new BadRequest("Invalid JSON value: " + literal);
+                    }
+                    value = literal.equals("null") ? null : literal;
+                }
+                if (value != null) {
+                    object.put(key, value);
+                }
+                if (peek(json, at) == ',') {
+                    at[0]++;
+                    continue;
+                }
+                expect(json, at, '}');
+                break;
+            }
+        }
+        if (skip(json, at[0]) != json.length()) {
+            throw new BadRequest("Invalid JSON: trailing characters");
+        }
+        return object;
+    }
+
+    private static String readString(final String json, final int[] at) throws BadRequest {
+        expect(json, at, '"');
+        final StringBuilder str = new StringBuilder();
+        while (at[0] < json.length()) {
+            final char c = json.charAt(at[0]++);
+            if (c == '"') {
+                return str.toString();
+            }
+            if (c != '\\') {
+                str.append(c);
+                continue;
+            }
+            if (at[0] >= json.length()) {
+                break;
+            }
+            final char e = json.charAt(at[0]++);
+            switch (e) {
+                case 'n':
+                    str.append('\n');
+                    break;
+                case 't':
+                    str.append('\t');
+                    break;
+                case 'r':
+                    str.append('\r');
+                    break;
+                case 'b':
+                    str.append('\b');
+                    break;
+                case 'f':
+                    str.append('\f');
+                    break;
+                case 'u':
+                    if (at[0] + 4 > json.length()) {
+                        throw new BadRequest("Invalid JSON escape");
+                    }
+                    try {
+                        str.append((char) Integer.parseInt(json.substring(at[0], at[0] + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw new BadRequest("Invalid JSON escape");
+                    }
+                    at[0] += 4;
+                    break;
+                default:
+                    str.append(e);
+            }
+        }
+        throw new BadRequest("Invalid JSON: unterminated string");
+    }
+
+    /*
+     * Skips the blanks, then checks the next character
+     */
+    private static void expect(final String json, final int[] at, char c) throws BadRequest {
+        if (peek(json, at) != c) {
+            throw new BadRequest("Invalid JSON: '" + c + "' expected at " + at[0]);
+        }
+        at[0]++;
+    }
+
+    private static char peek(final String json, final int[] at) {
+        at[0] = skip(json, at[0]);
+        return at[0] < json.length() ? json.charAt(at[0]) : 0;
+    }
+
+    private static int skip(final String json, int at) {
+        while (at < json.length() && Character.isWhitespace(json.charAt(at))) {
+            at++;
+        }
+        return at;
+    }
+
+    private static String hash(final byte[] bytes) {
+        try {
+            final StringBuilder key = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Reads the options of the server; the others are kept for the planners. Returns null on an invalid option.
+     */
+    private static PlanningServer configure(final String[] args) {
+        final List<String> plannerOptions = new ArrayList<String>();
+        final PlanningServer server = new PlanningServer();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                return null;
+            }
+            final String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "--host":
+                        server.host = value;
+                        break;
+                    case "--port":
+                        server.port = Integer.parseInt(value);
+                        break;
+                    case "--solvers":
+                        server.solvers = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        server.threads = Integer.parseInt(value);
+                        break;
+                    case "--limit":
+                        server.limit = Long.parseLong(value);
+                        break;
+                    case "--domains":
+                        server.domains = Integer.parseInt(value);
+                        break;
+                    case "--root":
+                        server.root = Paths.get(value);
+                        break;
+                    default:
+                        plannerOptions.add(args[i]);
+                        plannerOptions.add(value);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid value for " + args[i] + ": " + value);
+                return null;
+            }
+        }
+        if (server.threads == 0) {
+            server.threads = 4 * server.solvers;
+        }
+        if (server.solvers < 1 || server.threads < 1 || server.limit < 1 || server.domains < 1) {
+            System.out.println("Invalid value for the solvers, the threads, the limit or the domains");
+            return null;
+        }
+        try {
+            server.root = server.root.toRealPath();
+        } catch (IOException e) {
+            System.out.println("Invalid value for --root: " + server.root);
+            return null;
+        }
+        // Fails early on invalid planner options
+        server.plannerOptions = plannerOptions.toArray(new String[0]);
+        if (!new YetAnotherSATPlanner().configure(server.plannerOptions, 0)) {
+            return null;
+        }
+        return server;
+    }
+
+    public static void main(final String[] args) {
+        final PlanningServer server = configure(args);
+        if (server == null) {
+            System.out.println("Invalid command line");
+            return;
+        }
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.out.println("Cannot start the server: " + e.getMessage());
+        }
+    }
+}
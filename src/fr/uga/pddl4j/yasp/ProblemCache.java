@@ -0,0 +1,346 @@
+package fr.uga.pddl4j.yasp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+
+/**
+ * This class implements an on-disk cache of grounded problems. An entry holds what the planner needs from the
+ * instantiated problem: the action table, the keys of its symmetry detection, whether the goal can hold and the
+ * label of each action to print the plan, so that a cache hit skips the parsing and the grounding by PDDL4J. The
+ * symmetries are only detected by the first solve that breaks them. The step
+ * templates of the SAT encoding (see SATEncoding.Template) are cached next to it, one per set of encoding options.
+ *
+ * The entries are keyed by the SHA-256 of the domain and problem files and are checked against these hashes when
+ * loaded. They are written in a compact little endian binary format through memory-mapped files, renamed once
+ * complete so that concurrent runs never read a partial entry, and read back with memory-mapped I/O.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class ProblemCache {
+
+    /*
+     * First ints of every file; the version changes with the format
+     */
+    private static final int MAGIC = 0x59415350;
+    private static final int VERSION = 6;
+
+    /*
+     * Magic, version and the hashes of the domain and of the problem
+     */
+    private static final int HEADER_SIZE = 8 + 2 * 32;
+
+    private final Path directory;
+
+    public ProblemCache(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * A grounded problem, loaded from the cache or just stored in it.
+     */
+    public static final class Entry {
+        private final String key;
+        private final byte[] domainHash;
+        private final byte[] problemHash;
+        private final ActionTable table;
+        private final Symmetries.Keys keys;
+        private final boolean solvable;
+
+        /*
+         * The table with its symmetries, detected on demand
+         */
+        private ActionTable symmetric = null;
+
+        /*
+         * Labels of the actions in UTF-8: label a is labels[offsets[a], offsets[a+1][, decoded on demand
+         */
+        private final ByteBuffer labels;
+        private final int[] offsets;
+
+        private Entry(final byte[] domainHash, final byte[] problemHash, final ActionTable table,
+                final Symmetries.Keys keys, boolean solvable, final ByteBuffer labels, final int[] offsets) {
+            this.key = key(domainHash, problemHash);
+            this.domainHash = domainHash;
+            this.problemHash = problemHash;
+            this.table = table;
+            this.keys = keys;
+            this.solvable = solvable;
+            this.labels = labels;
+            this.offsets = offsets;
+        }
+
+        public String getKey() {
+            return this.key;
+        }
+
+        /**
+         * The action table, without symmetries.
+         */
+        public ActionTable getTable() {
+            return this.table;
+        }
+
+        /**
+         * The action table with its symmetries, detected on the first call.
+         *
+         * @param deadline the deadline of the run, none if null.
+         * @throws java.util.concurrent.CancellationException if the deadline is over or cancelled.
+         */
+        public synchronized ActionTable getTableWithSymmetries(final Deadline deadline) {
+            if (this.symmetric == null) {
+                this.symmetric = this.table.withSymmetries(
+                    new Symmetries(this.keys, this.table, deadline).getGenerators());
+            }
+            return this.symmetric;
+        }
+
+        /**
+         * False if the goal of the problem simplifies to false.
+         */
+        public boolean isSolvable() {
+            return this.solvable;
+        }
+
+        public String getLabel(int action) {
+            final byte[] bytes = new byte[this.offsets[action + 1] - this.offsets[action]];
+            this.labels.get(this.offsets[action], bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * A sequential plan in the layout of PDDL4J: one numbered action per line, the labels aligned on the right.
+         */
+        public String toString(final int[] plan) {
+            int width = 0;
+            final String[] labels = new String[plan.length];
+            for (int i = 0; i < plan.length; i++) {
+                labels[i] = getLabel(plan[i]);
+                width = Math.max(width, labels[i].length());
+            }
+            final int digits = (int) Math.log10(Math.max(1, plan.length)) + 1;
+            final StringBuilder str = new StringBuilder();
+            for (int i = 0; i < plan.length; i++) {
+                str.append(String.format("%0" + digits + "d: (%" + width + "s) [%d]%n", i, labels[i], 0));
+            }
+            return str.toString();
+        }
+    }
+
+    /**
+     * Loads the entry of the domain and problem files.
+     *
+     * @return the entry, or null if it is not in the cache or does not match the files.
+     * @throws IOException if the files cannot be read.
+     */
+    public Entry load(final Path domain, final Path problem) throws IOException {
+        final byte[] domainHash = hash(domain);
+        final byte[] problemHash = hash(problem);
+        final String name = key(domainHash, problemHash) + ".problem";
+        final ByteBuffer buffer = map(this.directory.resolve(name), domainHash, problemHash);
+        if (buffer == null) {
+            return null;
+        }
+        final IntBuffer in = buffer.asIntBuffer();
+        final boolean solvable = in.get() != 0;
+        final ActionTable table = ActionTable.read(in);
+        final Symmetries.Keys keys = Symmetries.Keys.read(in);
+        final int[] offsets = new int[table.getNbActions() + 1];
+        in.get(offsets);
+        buffer.position(buffer.position() + 4 * in.position());
+        return new Entry(domainHash, problemHash, table, keys, solvable, buffer.slice(), offsets);
+    }
+
+    /**
+     * Grounds the problem and stores its entry, replacing the previous one if any.
+     *
+     * @param pb the problem instantiated from the files.
+     * @return the entry of the problem.
+     * @throws IOException if the entry cannot be written.
+     */
+    public Entry store(final Path domain, final Path problem, final Problem pb) throws IOException {
+        final byte[] domainHash = hash(domain);
+        final byte[] problemHash = hash(problem);
+        final String name = key(domainHash, problemHash) + ".problem";
+        final boolean solvable = pb.isSolvable();
+        // The symmetries are detected on demand, from the keys
+        final ActionTable table = new ActionTable(pb);
+        final Symmetries.Keys keys = new Symmetries.Keys(pb);
+
+        final int nb_actions = table.getNbActions();
+        final byte[][] labels = new byte[nb_actions][];
+        final int[] offsets = new int[nb_actions + 1];
+        for (int a = 0; a < nb_actions; a++) {
+            final Action action = pb.getActions().get(a);
+            labels[a] = pb.toShortString(action).getBytes(StandardCharsets.UTF_8);
+            offsets[a + 1] = offsets[a] + labels[a].length;
+        }
+
+        final int ints = 1 + table.serializedSize() + keys.serializedSize() + offsets.length;
+        final Path tmp = temporary(name);
+        final ByteBuffer out = create(tmp, domainHash, problemHash, 4L * ints + offsets[nb_actions]);
+        final IntBuffer data = out.asIntBuffer();
+        data.put(solvable ? 1 : 0);
+        table.write(data);
+        keys.write(data);
+        data.put(offsets);
+        out.position(out.position() + 4 * ints);
+        for (byte[] label : labels) {
+            out.put(label);
+        }
+        Files.move(tmp, this.directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+
+        final ByteBuffer bytes = ByteBuffer.allocate(offsets[nb_actions]);
+        for (byte[] label : labels) {
+            bytes.put(label);
+        }
+        return new Entry(domainHash, problemHash, table, keys, solvable, bytes.flip(), offsets);
+    }
+
+    /**
+     * Loads the step template of an entry for the given encoding options.
+     *
+     * @return the template or null if none is cached.
+     * @throws IOException if the file cannot be read.
+     */
+    public SATEncoding.Template loadTemplate(final Entry entry, final EncodingOptions options) throws IOException {
+        final Path file = this.directory.resolve(entry.key + "." + signature(options) + ".template");
+        final ByteBuffer buffer = map(file, entry.domainHash, entry.problemHash);
+        if (buffer == null) {
+            return null;
+        }
+        final IntBuffer in = buffer.asIntBuffer();
+        final int step = in.get();
+        final int[] counts = new int[ClauseKind.values().length];
+        in.get(counts);
+        return new SATEncoding.Template(ClauseStore.read(in), step, counts);
+    }
+
+    /**
+     * Stores the step template of an entry for the given encoding options.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void storeTemplate(final Entry entry, final EncodingOptions options, final SATEncoding.Template template)
+            throws IOException {
+        final String name = entry.key + "." + signature(options) + ".template";
+        final int[] counts = template.getCounts();
+        final int ints = 1 + counts.length + template.getClauses().serializedSize();
+        final Path tmp = temporary(name);
+        final IntBuffer data = create(tmp, entry.domainHash, entry.problemHash, 4L * ints).asIntBuffer();
+        data.put(template.getStep());
+        data.put(counts);
+        template.getClauses().write(data);
+        Files.move(tmp, this.directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * The template depends on all the options but the number of encoding threads and the per step relevance
+     */
+    private static String signature(final EncodingOptions options) {
+        return options.getSemantics() + "-" + options.getAtMostOne() + "-" + (options.isReachability() ? "r" : "")
+            + (options.isMutexes() ? "m" : "") + (options.isInvariants() ? "i" : "")
+            + (options.isRelevance() ? "p" : "") + (options.isSymmetry() ? "s" : "")
+            + (options.isLandmarks() ? "l" : "");
+    }
+
+    /*
+     * The data of a file after its header, null if the file does not exist or its header does not match
+     */
+    private static ByteBuffer map(final Path file, final byte[] domainHash, final byte[] problemHash)
+            throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        final byte[] hash = new byte[32];
+        buffer.get(hash);
+        if (!Arrays.equals(hash, domainHash)) {
+            return null;
+        }
+        buffer.get(hash);
+        if (!Arrays.equals(hash, problemHash)) {
+            return null;
+        }
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     * Files are written under a name of their own, then renamed: concurrent runs never read a partial file
+     */
+    private Path temporary(final String name) throws IOException {
+        Files.createDirectories(this.directory);
+        return this.directory.resolve(name + "." + ProcessHandle.current().pid() + "-"
+            + Thread.currentThread().getId() + ".tmp");
+    }
+
+    /*
+     * The data of a new file of the given data size, mapped after its header
+     */
+    private static ByteBuffer create(final Path file, final byte[] domainHash, final byte[] problemHash, long size)
+            throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put(domainHash);
+        buffer.put(problemHash);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+     * Name of the files of a problem: the SHA-256 of the hashes of its domain and problem files
+     */
+    private static String key(final byte[] domainHash, final byte[] problemHash) {
+        final MessageDigest digest = sha256();
+        digest.update(domainHash);
+        digest.update(problemHash);
+        final StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    private static byte[] hash(final Path file) throws IOException {
+        return sha256().digest(Files.readAllBytes(file));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
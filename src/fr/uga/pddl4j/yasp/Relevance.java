@@ -0,0 +1,144 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.Arrays;
+
+/**
+ * This class implements the backward relevance analysis of a grounded planning problem. Starting from the goal, a
+ * fluent is relevant when it must be true (or false) for the goal or for a relevant action, and an action is
+ * relevant when it adds a fluent that must be true or deletes a fluent that must be false. Removing the other
+ * actions from a plan leaves a plan: they neither achieve a relevant literal nor destroy one needed false, so the
+ * encoding is built on the table projected on the relevant actions and fluents.
+ *
+ * The analysis also gives the distance of each action to the goal: the least number of steps, its own included,
+ * from the action to the goal through a chain of relevant literals. With one action per step or non-interfering
+ * actions (sequential and forall semantics), an action whose distance exceeds the steps remaining before the goal
+ * of a horizon cannot matter to that horizon. The exists-step semantics chains actions inside a step and gets no
+ * such bound.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class Relevance {
+
+    public static final int IRRELEVANT = Integer.MAX_VALUE;
+
+    /*
+     * Table projected on the relevant actions and fluents, and their indices in the original table
+     */
+    private final ActionTable table;
+    private final int[] actions;
+    private final int[] fluents;
+
+    /*
+     * Distance to the goal of each action of the projected table
+     */
+    private final int[] distance;
+
+    public Relevance(final ActionTable table) {
+        final int nb_fluents = table.getNbFluents();
+        final int nb_actions = table.getNbActions();
+
+        // Breadth-first search over the literals: 2f must be true, 2f+1 must be false
+        final int[] literalDistance = new int[2 * nb_fluents];
+        final int[] actionDistance = new int[nb_actions];
+        Arrays.fill(literalDistance, IRRELEVANT);
+        Arrays.fill(actionDistance, IRRELEVANT);
+        final int[] queue = new int[2 * nb_fluents];
+        int head = 0;
+        int tail = 0;
+        for (int f : table.getPositiveGoal()) {
+            literalDistance[2 * f] = 0;
+            queue[tail++] = 2 * f;
+        }
+        for (int f : table.getNegativeGoal()) {
+            literalDistance[2 * f + 1] = 0;
+            queue[tail++] = 2 * f + 1;
+        }
+        while (head < tail) {
+            final int literal = queue[head++];
+            final int d = literalDistance[literal] + 1;
+            final int f = literal >>> 1;
+            for (int a : (literal & 1) == 0 ? table.getAdders(f) : table.getDeleters(f)) {
+                if (actionDistance[a] != IRRELEVANT) {
+                    continue;
+                }
+                actionDistance[a] = d;
+                for (int p : table.getPositivePreconditions(a)) {
+                    if (literalDistance[2 * p] == IRRELEVANT) {
+                        literalDistance[2 * p] = d;
+                        queue[tail++] = 2 * p;
+                    }
+                }
+                for (int p : table.getNegativePreconditions(a)) {
+                    if (literalDistance[2 * p + 1] == IRRELEVANT) {
+                        literalDistance[2 * p + 1] = d;
+                        queue[tail++] = 2 * p + 1;
+                    }
+                }
+            }
+        }
+
+        int n = 0;
+        for (int a = 0; a < nb_actions; a++) {
+            if (actionDistance[a] != IRRELEVANT) {
+                n++;
+            }
+        }
+        this.actions = new int[n];
+        this.distance = new int[n];
+        n = 0;
+        for (int a = 0; a < nb_actions; a++) {
+            if (actionDistance[a] != IRRELEVANT) {
+                this.actions[n] = a;
+                this.distance[n++] = actionDistance[a];
+            }
+        }
+        n = 0;
+        for (int f = 0; f < nb_fluents; f++) {
+            if (literalDistance[2 * f] != IRRELEVANT || literalDistance[2 * f + 1] != IRRELEVANT) {
+                n++;
+            }
+        }
+        this.fluents = new int[n];
+        n = 0;
+        for (int f = 0; f < nb_fluents; f++) {
+            if (literalDistance[2 * f] != IRRELEVANT || literalDistance[2 * f + 1] != IRRELEVANT) {
+                this.fluents[n++] = f;
+            }
+        }
+        this.table = table.project(this.actions, this.fluents);
+    }
+
+    /**
+     * The table projected on the relevant actions and fluents.
+     */
+    public ActionTable getTable() {
+        return this.table;
+    }
+
+    /**
+     * Distance to the goal of an action of the projected table: it may only matter to a horizon if it is applied at
+     * most distance steps before its goal.
+     */
+    public int getDistance(int action) {
+        return this.distance[action];
+    }
+
+    /**
+     * Actions of a plan of the projected table renumbered as in the original table.
+     */
+    public int[] toOriginal(final int[] plan) {
+        final int[] original = new int[plan.length];
+        for (int i = 0; i < plan.length; i++) {
+            original[i] = this.actions[plan[i]];
+        }
+        return original;
+    }
+
+    public int getNbRelevantActions() {
+        return this.actions.length;
+    }
+
+    public int getNbRelevantFluents() {
+        return this.fluents.length;
+    }
+}
@@ -2,17 +2,19 @@ package fr.uga.pddl4j.yasp;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import fr.uga.pddl4j.plan.Plan;
 import fr.uga.pddl4j.plan.SequentialPlan;
 import fr.uga.pddl4j.problem.Fluent;
 import fr.uga.pddl4j.problem.Problem;
-import fr.uga.pddl4j.problem.operator.Action;
-import fr.uga.pddl4j.problem.operator.Condition;
-import fr.uga.pddl4j.problem.operator.Effect;
-import fr.uga.pddl4j.util.BitVector;
 
 /**
  * This class implements a planning problem/domain encoding into DIMACS
@@ -21,104 +23,379 @@ import fr.uga.pddl4j.util.BitVector;
  * @version 0.1 - 30.03.2024
  */
 public final class SATEncoding {
+
+    private static final Logger LOGGER = LogManager.getLogger(SATEncoding.class.getName());
+
     /*
      * A SAT problem in dimacs format is a list of int list a.k.a clauses
+     * Clauses are stored flat in ClauseStores, no clause is boxed
      */
-    private List<List<Integer>> initList = new ArrayList<List<Integer>>();
+    private ClauseStore initList = new ClauseStore();
     private int nb_fluents;
 
     /*
-     * Goal
+     * Actions: preconditions and effects are compiled once in the action table
+     * and reused by every step of every horizon
      */
-    private List<Integer> goalList = new ArrayList<Integer>();
+    private final ActionTable table;
+    private int nb_actions;
 
     /*
-     * Actions
+     * Clause buffers of the transitions (see Step): one reused by the sequential encoding,
+     * one per step when the steps are encoded in parallel
      */
-    private List<Action> actions = new ArrayList<Action>();
-    private List<List<Integer>> actionPreconditionList = new ArrayList<List<Integer>>();
-    private List<List<Integer>> actionEffectList = new ArrayList<List<Integer>>();
-    private int nb_actions;
+    private Step step;
+    private final int parallelism;
 
     /*
-     * State transistions
+     * Deadline of the run, checked before each step is encoded or copied; none if null
      */
-    private HashMap<Integer, List<Integer>> addList = new HashMap<Integer, List<Integer>>();
-    private HashMap<Integer, List<Integer>> delList = new HashMap<Integer, List<Integer>>();
-    private List<List<Integer>> stateTransitionList = new ArrayList<List<Integer>>();
-    
+    private final Deadline deadline;
 
     /*
-     * Action disjunctions
+     * Once the planning graph has leveled off, the transition from step t to t+1 is the transition of the template
+     * step with every variable shifted by (t - templateStep) * width: it is copied instead of encoded.
+     * Without planning graph all the transitions have the same shape, but the first one: its symmetry breaking
+     * chains start afresh while the others continue the chains of the previous step.
      */
-    
-    private List<List<Integer>> actionDisjunctionList = new ArrayList<List<Integer>>();
+    private final boolean templating;
+    private final int templateFrom;
+    private ClauseStore template;
+    private int templateStep;
+    private final int[] templateCounts = new int[ClauseKind.values().length];
+
+    private final StepSemantics semantics;
+
+    /*
+     * Forward reachability (null when disabled): the variables out of reach are fixed by unit clauses
+     * and the clauses they satisfy are not generated
+     */
+    private final PlanningGraph graph;
+
+    /*
+     * State invariants (null when disabled): h2 mutexes and exactly-one groups at every step
+     */
+    private final Invariants invariants;
+
+    /*
+     * Number of clauses of each kind (see ClauseKind) generated by the last call of encode()
+     */
+    private final int[] counts = new int[ClauseKind.values().length];
+
+    /*
+     * SEQUENTIAL: at most one action per step, with its auxiliary variables
+     */
+    private final AtMostOne atMostOne;
+    private int atMostOneFirst;
+    private int nb_atMostOneAux;
+
+    /*
+     * FORALL: per action, the interfering actions of higher index
+     */
+    private int[][] interference;
+
+    /*
+     * EXISTS: first auxiliary chain variable of each fluent (-1 when no chain is needed)
+     * for deleters vs positive requirers and adders vs negative requirers
+     */
+    private int[] positiveChain;
+    private int[] negativeChain;
     
 
     /*
      * Current DIMACS encoding of the planning domain and problem for #steps steps
      * Contains the initial state, actions and action disjunction
      * Goal is no there!
+     * Both stores may be kept off the heap (see ClauseStorage): they only hold the clauses of the last call of
+     * encode(), handed to the solver then dropped
+     */
+    public ClauseStore currentDimacs;
+
+    /*
+     * Current goal encoding: the goal of horizon t is guarded by its selector g(t),
+     * i.e. clauses (-g(t) v goal fluent at t), and is activated by assuming g(t)
      */
-    public List<List<Integer>> currentDimacs = new ArrayList<List<Integer>>();
+    public ClauseStore currentGoal;
+    private final int goalSelector;
 
     /*
-     * Current goal encoding
+     * Distances of the actions to the goal when the actions too far from the goal of a horizon are disabled, null
+     * otherwise; maxDistance is the greatest of them
      */
-    public List<List<Integer>> currentGoal = new ArrayList<List<Integer>>();
+    private final Relevance relevance;
+    private int maxDistance;
+
+    /*
+     * Symmetries of the table broken by lex-leader constraints, null if they are not; the chain of the generator g
+     * uses the auxiliary variables symmetryFirst[g] + i of each layer, i ranging over its pairs
+     */
+    private final int[][] symmetries;
+    private int[] symmetryFirst;
+
+    /*
+     * Fact and action landmarks required by the goal of each horizon, null if they are not; the auxiliary variable
+     * landmarkFirst + landmark[f] of layer t means "the landmark f has been true at some step <= t"
+     */
+    private final Landmarks landmarks;
+    private int landmarkFirst;
+    private int[] landmark;
 
     /*
      * Current number of steps of the SAT encoding
      */
     private int steps;
 
+    /*
+     * Dense numbering of the fluent and action variables of each step
+     */
+    private final VariableMap variables;
+
+    /**
+     * Transition of the template step, its clause counts by kind, and the step it was encoded for. It depends only
+     * on the action table, the planning graph, the invariants and the options of the encoding: it can be reused by
+     * another encoding built from the same ones (see ProblemCache).
+     */
+    public static final class Template {
+        private final ClauseStore clauses;
+        private final int step;
+        private final int[] counts;
+
+        public Template(final ClauseStore clauses, int step, final int[] counts) {
+            if (counts.length != ClauseKind.values().length) {
+                throw new IllegalArgumentException("One count per kind of clause expected");
+            }
+            this.clauses = clauses;
+            this.step = step;
+            this.counts = counts;
+        }
+
+        public ClauseStore getClauses() {
+            return this.clauses;
+        }
+
+        public int getStep() {
+            return this.step;
+        }
+
+        public int[] getCounts() {
+            return this.counts;
+        }
+    }
+
+    /*
+     * Clauses of the transition from step t to step t+1, by kind. They depend only on t and on the read only tables
+     * of the encoding, so that several steps can be encoded at once, each in its own buffers.
+     */
+    private final class Step {
+        private final ClauseStore fixedList = new ClauseStore();
+        private final ClauseStore invariantList = new ClauseStore();
+        private final ClauseStore actionPreconditionList = new ClauseStore();
+        private final ClauseStore actionEffectList = new ClauseStore();
+        private final ClauseStore actionDisjunctionList = new ClauseStore();
+        private final ClauseStore stateTransitionList = new ClauseStore();
+        private final ClauseStore symmetryList = new ClauseStore();
+        private final ClauseStore landmarkList = new ClauseStore();
+
+        /*
+         * SEQUENTIAL: literals and auxiliary variables of the at most one constraint
+         */
+        private final int[] atMostOneLiterals;
+        private final int[] atMostOneAux;
+
+        private Step() {
+            final boolean sequential = SATEncoding.this.semantics == StepSemantics.SEQUENTIAL;
+            this.atMostOneLiterals = new int[sequential ? SATEncoding.this.nb_actions : 0];
+            this.atMostOneAux = new int[SATEncoding.this.nb_atMostOneAux];
+        }
+
+        private void clear() {
+            this.fixedList.clear();
+            this.invariantList.clear();
+            this.actionPreconditionList.clear();
+            this.actionEffectList.clear();
+            this.actionDisjunctionList.clear();
+            this.stateTransitionList.clear();
+            this.symmetryList.clear();
+            this.landmarkList.clear();
+        }
+
+        private int size() {
+            return this.fixedList.size() + this.invariantList.size() + this.actionPreconditionList.size()
+                + this.actionEffectList.size() + this.actionDisjunctionList.size() + this.stateTransitionList.size()
+                + this.symmetryList.size() + this.landmarkList.size();
+        }
+
+        private void appendTo(final ClauseStore clauses) {
+            clauses.addAll(this.fixedList);
+            clauses.addAll(this.invariantList);
+            clauses.addAll(this.actionPreconditionList);
+            clauses.addAll(this.actionEffectList);
+            clauses.addAll(this.actionDisjunctionList);
+            clauses.addAll(this.stateTransitionList);
+            clauses.addAll(this.symmetryList);
+            clauses.addAll(this.landmarkList);
+        }
+
+        private void countTo(final int[] counts) {
+            counts[ClauseKind.FIXED.ordinal()] += this.fixedList.size();
+            counts[ClauseKind.INVARIANT.ordinal()] += this.invariantList.size();
+            counts[ClauseKind.PRECONDITION.ordinal()] += this.actionPreconditionList.size();
+            counts[ClauseKind.EFFECT.ordinal()] += this.actionEffectList.size();
+            counts[ClauseKind.EXCLUSION.ordinal()] += this.actionDisjunctionList.size();
+            counts[ClauseKind.FRAME.ordinal()] += this.stateTransitionList.size();
+            counts[ClauseKind.SYMMETRY.ordinal()] += this.symmetryList.size();
+            counts[ClauseKind.LANDMARK.ordinal()] += this.landmarkList.size();
+        }
+    }
+
     public SATEncoding(Problem problem, int steps) {
+        this(problem, steps, new EncodingOptions());
+    }
+
+    public SATEncoding(Problem problem, int steps, EncodingOptions options) {
+        this(new ActionTable(problem), steps, options);
+    }
+
+    /*
+     * The action table is read only: it can be shared by several encodings of the same problem
+     */
+    public SATEncoding(ActionTable table, int steps, EncodingOptions options) {
+        this(table, options.isReachability() ? new PlanningGraph(table, options.getSemantics(), options.isMutexes())
+            : null, options.isInvariants() ? new Invariants(table) : null, steps, options);
+    }
+
+    /*
+     * The planning graph and the invariants are read only too, they must have been computed from the same action
+     * table (or be null)
+     */
+    public SATEncoding(ActionTable table, PlanningGraph graph, Invariants invariants, int steps,
+            EncodingOptions options) {
+        this(table, graph, invariants, null, null, steps, options, null, null);
+    }
+
+    /*
+     * The relevance, if not null, must have projected the table: with the per step relevance option, the actions too
+     * far from the goal of a horizon are disabled under its selector (except in the exists-step semantics). The
+     * landmarks, if not null, must have been computed from the table. The template, if not null, must have been
+     * taken from an encoding with the same table, graph, invariants and options: the steps from its step on are
+     * copied from it. The deadline, if not null, stops the encoding with a CancellationException once over; the
+     * encoding cannot be used anymore then.
+     */
+    public SATEncoding(ActionTable table, PlanningGraph graph, Invariants invariants, Relevance relevance,
+            Landmarks landmarks, int steps, EncodingOptions options, Template template, Deadline deadline) {
 
         this.steps = steps;
+        this.currentDimacs = new ClauseStore(options.getStorage());
+        this.currentGoal = new ClauseStore(options.getStorage());
+        this.graph = graph;
+        this.invariants = invariants;
+        this.semantics = options.getSemantics();
+        this.atMostOne = options.getAtMostOne();
+        this.parallelism = options.getParallelism();
+        this.deadline = deadline;
+        this.templating = options.isTemplate();
+        this.relevance = relevance != null && options.isStepRelevance() && this.semantics != StepSemantics.EXISTS
+            ? relevance : null;
+        // The exists-step semantics orders the actions of a step by index: swapping actions is not a symmetry
+        this.symmetries = options.isSymmetry() && this.semantics != StepSemantics.EXISTS
+            && table.getSymmetries().length > 0 ? table.getSymmetries() : null;
+        this.templateFrom = Math.max(this.symmetries != null ? 2 : 1, graph == null ? 1 : graph.getLastLayer());
+        this.landmarks = landmarks != null && options.isLandmarks() && landmarks.getFacts().length > 0
+            ? landmarks : null;
+        if (this.templating && template != null) {
+            this.template = template.clauses;
+            this.templateStep = template.step;
+            System.arraycopy(template.counts, 0, this.templateCounts, 0, this.templateCounts.length);
+        }
 
         // Encoding of init
         // Each fact is a unit clause
         // Init state step is 1
         // We get the initial state from the planning problem
         // State is a bit vector where the ith bit at 1 corresponds to the ith fluent being true
-        this.nb_fluents = problem.getFluents().size();
-        //System.out.println(" fluents = " + nb_fluents );
-        final BitVector init = problem.getInitialState().getPositiveFluents();
-        this.actions = problem.getActions();
-        this.nb_actions = this.actions.size();
-        List<Integer> clause;
+        this.table = table;
+        this.nb_fluents = this.table.getNbFluents();
+        this.nb_actions = this.table.getNbActions();
+        if (this.relevance != null) {
+            for(int a=0;a<this.nb_actions;a++){
+                this.maxDistance = Math.max(this.maxDistance, this.relevance.getDistance(a));
+            }
+        }
+        this.variables = new VariableMap(this.nb_fluents, this.nb_actions);
+        this.goalSelector = this.variables.reserve(1);
+        if (this.symmetries != null) {
+            this.symmetryFirst = new int[this.symmetries.length];
+            for(int g=0;g<this.symmetries.length;g++){
+                this.symmetryFirst[g] = this.variables.reserve(this.symmetries[g].length / 2);
+            }
+        }
+        if (this.landmarks != null) {
+            this.landmarkFirst = this.variables.reserve(this.landmarks.getFacts().length);
+            this.landmark = new int[this.nb_fluents];
+            Arrays.fill(this.landmark, -1);
+            for(int l=0;l<this.landmarks.getFacts().length;l++){
+                this.landmark[this.landmarks.getFacts()[l]] = l;
+            }
+        }
+
+        // Action exclusion tables, computed once for all the steps
+        switch (this.semantics) {
+            case SEQUENTIAL:
+                this.nb_atMostOneAux = this.atMostOne.auxiliaries(this.nb_actions);
+                this.atMostOneFirst = this.variables.reserve(this.nb_atMostOneAux);
+                break;
+            case FORALL:
+                this.interference = interference(this.table);
+                break;
+            case EXISTS:
+                this.positiveChain = new int[this.nb_fluents];
+                this.negativeChain = new int[this.nb_fluents];
+                int nb_aux = 0;
+                for(int fluent=0;fluent<this.nb_fluents;fluent++){
+                    this.positiveChain[fluent] = -1;
+                    if (this.table.getDeleters(fluent).length > 0 && this.table.getRequirers(fluent).length > 0) {
+                        this.positiveChain[fluent] = nb_aux;
+                        nb_aux += this.table.getRequirers(fluent).length;
+                    }
+                    this.negativeChain[fluent] = -1;
+                    if (this.table.getAdders(fluent).length > 0 && this.table.getNegativeRequirers(fluent).length > 0) {
+                        this.negativeChain[fluent] = nb_aux;
+                        nb_aux += this.table.getNegativeRequirers(fluent).length;
+                    }
+                }
+                final int first = this.variables.reserve(nb_aux);
+                for(int fluent=0;fluent<this.nb_fluents;fluent++){
+                    if (this.positiveChain[fluent] >= 0) this.positiveChain[fluent] += first;
+                    if (this.negativeChain[fluent] >= 0) this.negativeChain[fluent] += first;
+                }
+                break;
+        }
 
         // InitList => format Dimacs
-        for(Integer i=0;i<this.nb_fluents;i++){
-            clause = new ArrayList<Integer>();
-            if(init.get(i))
+        final boolean[] init = new boolean[this.nb_fluents];
+        for(int fluent : this.table.getInitialState()){
+            init[fluent] = true;
+        }
+        for(int i=0;i<this.nb_fluents;i++){
+            if(init[i])
             {
-                clause.add(pair(i,1));
+                this.initList.add(this.variables.fluent(i, 1));
             }
             else
             {
-                clause.add(-pair(i,1));
+                this.initList.add(-this.variables.fluent(i, 1));
             }
-            this.initList.add(clause);
-        }
-
-        //goalList
-
-        BitVector goalBitSet = problem.getGoal().getPositiveFluents();
-        goalBitSet.or(problem.getGoal().getNegativeFluents());
-
-        for(Integer i=0;i<this.nb_fluents;i++){
-            if(goalBitSet.get(i)) {this.goalList.add(i);}
         }
-
-        for(Integer fluent:this.goalList){
-            this.currentGoal.add(new ArrayList<Integer>(){{add(pair(fluent,1));}});
+        //the landmarks are false in the initial state: none is reached at step 1
+        if (this.landmarks != null) {
+            for(int l=0;l<this.landmarks.getFacts().length;l++){
+                this.initList.add(-this.variables.auxiliary(this.landmarkFirst + l, 1));
+            }
         }
 
         //check if goal is in initList => TODO !!!
 
-
-        
+        this.step = new Step();
         encode(1, steps);
         
     }
@@ -127,120 +404,485 @@ public final class SATEncoding {
 
         this.currentGoal.clear();
         this.currentDimacs.clear();
+        Arrays.fill(this.counts, 0);
         if(from==1){
-            for( List<Integer> sublist : this.initList){
-                this.currentDimacs.add(new ArrayList<>(sublist));
+            this.currentDimacs.addAll(this.initList);
+            this.counts[ClauseKind.FIXED.ordinal()] += this.initList.size();
+        }
+        final ActionTable table = this.table;
+
+        //guarded goal of every new horizon
+        for(int t=(from==1 ? 1 : from+1);t<=to;t++){
+            int selector = getGoalSelector(t);
+            for(int fluent: table.getPositiveGoal()){
+                this.currentGoal.add(-selector, this.variables.fluent(fluent, t));
+            }
+            for(int fluent: table.getNegativeGoal()){
+                this.currentGoal.add(-selector, -this.variables.fluent(fluent, t));
+            }
+        }
+        this.counts[ClauseKind.GOAL.ordinal()] = this.currentGoal.size();
+
+        //actions too far from the goal of every new horizon at their step: only the last maxDistance steps matter
+        if (this.relevance != null) {
+            for(int t=(from==1 ? 1 : from+1);t<=to;t++){
+                checkDeadline();
+                int selector = getGoalSelector(t);
+                for(int s=Math.max(1, t-this.maxDistance+1);s<t;s++){
+                    for(int a=0;a<this.nb_actions;a++){
+                        if (this.relevance.getDistance(a) > t - s && isApplicable(a, s)) {
+                            this.currentGoal.add(-selector, -this.variables.action(a, s));
+                        }
+                    }
+                }
             }
+            this.counts[ClauseKind.RELEVANCE.ordinal()] = this.currentGoal.size()
+                - this.counts[ClauseKind.GOAL.ordinal()];
         }
-        final int nb_fluents = this.nb_fluents;
 
-        //copy goal with right "final step"
-        for(Integer fluent: this.goalList){
-            this.currentGoal.add(new ArrayList<Integer>(){{
-                        add(pair(fluent,to));}});
+        //every landmark reached by the goal of every new horizon
+        if (this.landmarks != null) {
+            final int size = this.currentGoal.size();
+            for(int t=(from==1 ? 1 : from+1);t<=to;t++){
+                int selector = getGoalSelector(t);
+                for(int l=0;l<this.landmarks.getFacts().length;l++){
+                    this.currentGoal.add(-selector, this.variables.auxiliary(this.landmarkFirst + l, t));
+                }
+                //every action landmark applied at one of the steps before the goal
+                for(int a : this.landmarks.getActions()){
+                    this.currentGoal.push(-selector);
+                    for(int s=1;s<t;s++){
+                        if (isApplicable(a, s)) {
+                            this.currentGoal.push(this.variables.action(a, s));
+                        }
+                    }
+                    this.currentGoal.close();
+                }
+            }
+            this.counts[ClauseKind.LANDMARK.ordinal()] += this.currentGoal.size() - size;
         }
 
-        for(int t=from;t<=to;t++){
-            //reset list
-            this.actionDisjunctionList.clear();
-            this.actionPreconditionList.clear();
-            this.actionEffectList.clear();
-            this.stateTransitionList.clear();
-            this.addList.clear();
-            this.delList.clear();
+        // Transitions from step t to step t+1: encoded until the template is known, copied from it afterwards
+        int end = to;
+        if (this.templating) {
+            end = this.template != null ? Math.min(to, Math.max(from, this.templateStep))
+                : Math.min(to, Math.max(from, this.templateFrom) + 1);
+        }
+        if (this.parallelism > 1 && end - from > 1) {
+            // Each step in its own buffers on a fork/join pool, appended in the order of the steps; at most two
+            // steps per thread are pending, so that the heap does not grow with the number of steps
+            final ForkJoinPool pool = new ForkJoinPool(Math.min(this.parallelism, end - from));
+            try {
+                final int window = 2 * this.parallelism;
+                final List<ForkJoinTask<Step>> tasks = new ArrayList<ForkJoinTask<Step>>(end - from);
+                for(int t=from;t<end;t++){
+                    checkDeadline();
+                    final int current = t;
+                    tasks.add(pool.submit(() -> encodeStep(current, new Step())));
+                    if (t - from + 1 >= window) {
+                        final int i = t - from + 1 - window;
+                        append(tasks.get(i).join(), from + i);
+                        tasks.set(i, null);
+                    }
+                }
+                for(int i=Math.max(0, tasks.size() - window + 1);i<tasks.size();i++){
+                    append(tasks.get(i).join(), from + i);
+                    tasks.set(i, null);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } else {
+            for(int t=from;t<end;t++){
+                checkDeadline();
+                append(encodeStep(t, this.step), t);
+            }
+        }
+        if (end < to) {
+            // Checks once that the last shifted variable does not overflow
+            this.variables.size(to);
+            for(int t=end;t<to;t++){
+                checkDeadline();
+                this.currentDimacs.addAllShifted(this.template, (t - this.templateStep) * this.variables.width());
+                for(int k=0;k<this.counts.length;k++){
+                    this.counts[k] += this.templateCounts[k];
+                }
+            }
+        }
 
-            //action clauses
+        LOGGER.info("Encoding : successfully done (" + (this.currentDimacs.size()
+                + this.currentGoal.size()) + " clauses"
+                + (this.invariants != null ? " including " + getClauseCount(ClauseKind.INVARIANT)
+                + " invariant clauses" : "") + ", " + to + " steps)\n");
+    }
+
+    private void checkDeadline() {
+        if (this.deadline != null) {
+            this.deadline.check();
+        }
+    }
+
+    /*
+     * Clauses of the transition from step t to step t+1 in the buffers of step
+     */
+    private Step encodeStep(int t, final Step step){
+        final ActionTable table = this.table;
+        step.clear();
+
+        //variables out of reach: actions of step t and fluents of step t+1
+        if (this.graph != null) {
             for(int a=0;a<this.nb_actions;a++){
-                Action action = this.actions.get(a);
-                int actionVal = pair(nb_fluents + a, t);
-
-                //precond & effect
-                Condition pre = action.getPrecondition();
-                BitVector posPre = pre.getPositiveFluents();
-                BitVector posNeg = pre.getNegativeFluents();
-
-                Effect eff = action.getUnconditionalEffect();
-                BitVector effPos = eff.getPositiveFluents();
-                BitVector effNeg = eff.getNegativeFluents();
-                for(int fluent=0;fluent<nb_fluents;fluent++){
-                    if(posPre.get(fluent)) { this.actionPreconditionList.add(Arrays.asList(-actionVal,pair(fluent,t)));}
-                    if(posNeg.get(fluent)) { this.actionPreconditionList.add(Arrays.asList(-actionVal,-pair(fluent,t)));}
-                    if(effPos.get(fluent)) { this.actionEffectList.add(Arrays.asList(-actionVal,pair(fluent,t+1)));
-                                             this.addList.computeIfAbsent(pair(fluent,t), k-> new ArrayList<>()).add(actionVal);}
-                    if(effNeg.get(fluent)) { this.actionEffectList.add(Arrays.asList(-actionVal,-pair(fluent,t+1)));
-                                             this.delList.computeIfAbsent(pair(fluent,t), k-> new ArrayList<>()).add(actionVal);}
+                if (!this.graph.isApplicable(a, t)) {
+                    step.fixedList.add(-this.variables.action(a, t));
                 }
-                
-                //No 2 action at same time
-                for(int b = a+1;b<this.nb_actions;b++){
-                    int actionValB = pair(nb_fluents + b,t);
-                    this.actionDisjunctionList.add(Arrays.asList(-actionVal,-actionValB));
+            }
+            for(int fluent=0;fluent<this.nb_fluents;fluent++){
+                if (!this.graph.isReachable(fluent, t+1)) {
+                    step.fixedList.add(-this.variables.fluent(fluent, t+1));
+                } else if (!this.graph.isFalsifiable(fluent, t+1)) {
+                    step.fixedList.add(this.variables.fluent(fluent, t+1));
                 }
             }
+        }
 
-            //frameAxiom
-            if(t < to){
-                for(int fluent=0;fluent<this.nb_fluents;fluent++){
-                    int fi = pair(fluent,t);
-                    int fip1 = pair(fluent,t+1);
-
-                    List<Integer> adds = this.addList.getOrDefault(fi, new ArrayList<>());
-                    List<Integer> dels = this.delList.getOrDefault(fi, new ArrayList<>());
-
-                    List<Integer> clause = new ArrayList<>();
-                    clause.add(fi);
-                    clause.add(-fip1);
-                    clause.addAll(adds);
-                    stateTransitionList.add(clause);
-
-                    clause = new ArrayList<>();
-                    clause.add(-fi);
-                    clause.add(fip1);
-                    clause.addAll(dels);
-                    stateTransitionList.add(clause);
+        //action clauses: only the fluents the action touches are visited
+        for(int a=0;a<this.nb_actions;a++){
+            if (!isApplicable(a, t)) {
+                continue;
+            }
+            int actionVal = this.variables.action(a, t);
+
+            //precond & effect
+            for(int fluent : table.getPositivePreconditions(a)){
+                step.actionPreconditionList.add(-actionVal,this.variables.fluent(fluent, t));
+            }
+            for(int fluent : table.getNegativePreconditions(a)){
+                step.actionPreconditionList.add(-actionVal,-this.variables.fluent(fluent, t));
+            }
+            for(int fluent : table.getAddEffects(a)){
+                step.actionEffectList.add(-actionVal,this.variables.fluent(fluent, t+1));
+            }
+            for(int fluent : table.getDeleteEffects(a)){
+                step.actionEffectList.add(-actionVal,-this.variables.fluent(fluent, t+1));
+            }
+
+            if (this.semantics == StepSemantics.FORALL) {
+                //No 2 interfering actions at same time
+                for(int b : this.interference[a]){
+                    if (isApplicable(b, t)) {
+                        step.actionDisjunctionList.add(-actionVal,-this.variables.action(b, t));
+                    }
                 }
             }
-            
-            //add all clauses
-            this.currentDimacs.addAll(this.actionPreconditionList);
-            this.currentDimacs.addAll(this.actionEffectList);
-            this.currentDimacs.addAll(this.actionDisjunctionList);
-            this.currentDimacs.addAll(this.stateTransitionList);
         }
 
-        System.out.println("Encoding : successfully done (" + (this.currentDimacs.size()
-                + this.currentGoal.size()) + " clauses, " + to + " steps)");
+        if (this.semantics == StepSemantics.SEQUENTIAL) {
+            //No 2 action at same time
+            int n = 0;
+            for(int a=0;a<this.nb_actions;a++){
+                if (isApplicable(a, t)) {
+                    step.atMostOneLiterals[n++] = this.variables.action(a, t);
+                }
+            }
+            //fewer literals never need more auxiliary variables than reserved
+            for(int i=0;i<step.atMostOneAux.length;i++){
+                step.atMostOneAux[i] = this.variables.auxiliary(this.atMostOneFirst + i, t);
+            }
+            this.atMostOne.encode(step.atMostOneLiterals, n, step.atMostOneAux, step.actionDisjunctionList);
+        } else if (this.semantics == StepSemantics.EXISTS) {
+            //No action may break a precondition of a later action of the same step
+            for(int fluent=0;fluent<this.nb_fluents;fluent++){
+                if (this.positiveChain[fluent] >= 0) {
+                    encodeChain(table.getDeleters(fluent), table.getRequirers(fluent), this.positiveChain[fluent], t, step);
+                }
+                if (this.negativeChain[fluent] >= 0) {
+                    encodeChain(table.getAdders(fluent), table.getNegativeRequirers(fluent), this.negativeChain[fluent], t, step);
+                }
+            }
+        }
+
+        //frameAxiom: a fluent changes only if one of its adders/deleters is applied
+        for(int fluent=0;fluent<this.nb_fluents;fluent++){
+            int fi = this.variables.fluent(fluent, t);
+            int fip1 = this.variables.fluent(fluent, t+1);
+
+            //the clauses satisfied by a fixed fluent are skipped
+            if (this.graph == null || (this.graph.isReachable(fluent, t+1) && this.graph.isFalsifiable(fluent, t))) {
+                step.stateTransitionList.push(fi);
+                step.stateTransitionList.push(-fip1);
+                for(int a : table.getAdders(fluent)){
+                    if (isApplicable(a, t)) {
+                        step.stateTransitionList.push(this.variables.action(a, t));
+                    }
+                }
+                step.stateTransitionList.close();
+            }
+
+            if (this.graph == null || (this.graph.isReachable(fluent, t) && this.graph.isFalsifiable(fluent, t+1))) {
+                step.stateTransitionList.push(-fi);
+                step.stateTransitionList.push(fip1);
+                for(int a : table.getDeleters(fluent)){
+                    if (isApplicable(a, t)) {
+                        step.stateTransitionList.push(this.variables.action(a, t));
+                    }
+                }
+                step.stateTransitionList.close();
+            }
+        }
+        
+        //invariants of the state of step t+1
+        if (this.invariants != null) {
+            encodeInvariants(t+1, step);
+        }
+
+        if (this.symmetries != null) {
+            encodeSymmetries(t, step);
+        }
+
+        if (this.landmarks != null) {
+            encodeLandmarks(t, step);
+        }
+        return step;
+    }
+
+    /*
+     * Landmarks reached by step t+1: reached at t+1 => reached at t or true at t+1. A landmark true at t+1 has its
+     * predecessors reached by step t: the action that first achieved it needed them at its step or before.
+     */
+    private void encodeLandmarks(int t, final Step step) {
+        final int[] facts = this.landmarks.getFacts();
+        for(int l=0;l<facts.length;l++){
+            step.landmarkList.push(-this.variables.auxiliary(this.landmarkFirst + l, t+1));
+            step.landmarkList.push(this.variables.auxiliary(this.landmarkFirst + l, t));
+            step.landmarkList.push(this.variables.fluent(facts[l], t+1));
+            step.landmarkList.close();
+        }
+        final int[] orderings = this.landmarks.getOrderings();
+        for(int i=0;i<orderings.length;i+=2){
+            step.landmarkList.add(-this.variables.fluent(orderings[i+1], t+1),
+                this.variables.auxiliary(this.landmarkFirst + this.landmark[orderings[i]], t));
+        }
+    }
+
+    /*
+     * Lex-leader constraints (Aloul, Markov & Sakallah): the action variables of the steps, in the order of their
+     * numbers, must be lexicographically smaller than or equal to their image by each generator. Only the first
+     * action a of each pair (a, b) is compared: its image is b, and b compares equal once a does. The chain variable
+     * e(i) means "equal up to the pair i"; the chain goes on from the last pair of the previous step, so that every
+     * horizon orders the whole plan.
+     */
+    private void encodeSymmetries(int t, final Step step) {
+        for(int g=0;g<this.symmetries.length;g++){
+            final int[] pairs = this.symmetries[g];
+            final int last = this.symmetryFirst[g] + pairs.length / 2 - 1;
+            int previous = t == 1 ? 0 : this.variables.auxiliary(last, t-1);
+            for(int i=0;i<pairs.length;i+=2){
+                final int x = this.variables.action(pairs[i], t);
+                final int y = this.variables.action(pairs[i+1], t);
+                final int equal = this.variables.auxiliary(this.symmetryFirst[g] + i / 2, t);
+                //equal so far => x <= y
+                pushChain(step.symmetryList, previous, -x, y);
+                //equal so far and x = y => equal up to this pair
+                pushChain(step.symmetryList, previous, -x, equal);
+                pushChain(step.symmetryList, previous, y, equal);
+                previous = equal;
+            }
+        }
+    }
+
+    /*
+     * Clause (-previous v l1 v l2), previous being left out at the start of the chain
+     */
+    private static void pushChain(final ClauseStore clauses, int previous, int l1, int l2) {
+        if (previous != 0) {
+            clauses.push(-previous);
+        }
+        clauses.push(l1);
+        clauses.push(l2);
+        clauses.close();
+    }
+
+    private void append(final Step step, int t){
+        step.countTo(this.counts);
+        step.appendTo(this.currentDimacs);
+        if (this.templating && this.template == null && t >= this.templateFrom) {
+            this.template = new ClauseStore(step.size());
+            step.appendTo(this.template);
+            this.templateStep = t;
+            step.countTo(this.templateCounts);
+        }
+    }
+
+    /*
+     * Binary clause for each h2 mutex and at least one fluent of each exactly-one group (its pairs are h2 mutexes)
+     * at step t. The fluents fixed at step t are left out.
+     */
+    private void encodeInvariants(int t, final Step step) {
+        for(int p=0;p<this.nb_fluents;p++){
+            if (!isReachable(p, t)) {
+                continue;
+            }
+            final BitSet mutexes = this.invariants.getMutexes(p);
+            for(int q=mutexes.nextSetBit(p+1);q>=0;q=mutexes.nextSetBit(q+1)){
+                if (isReachable(q, t)) {
+                    step.invariantList.add(-this.variables.fluent(p, t), -this.variables.fluent(q, t));
+                }
+            }
+        }
+        for(int[] group : this.invariants.getGroups()){
+            boolean satisfied = false;
+            for(int fluent : group){
+                if (this.graph != null && !this.graph.isFalsifiable(fluent, t)) {
+                    satisfied = true;
+                } else if (isReachable(fluent, t)) {
+                    step.invariantList.push(this.variables.fluent(fluent, t));
+                }
+            }
+            if (satisfied) {
+                step.invariantList.cancel();
+            } else {
+                step.invariantList.close();
+            }
+        }
+    }
+
+    private boolean isReachable(int fluent, int step) {
+        return this.graph == null || this.graph.isReachable(fluent, step);
     }
 
 
     
     /*
-     * SAT encoding for next step
+     * Chain encoding (Rintanen, Heljanko & Niemela): once an action of e is applied, no action of r with a higher
+     * index may be applied. aux(base + k) means "some earlier action of e has been applied before r[k]".
+     */
+    private void encodeChain(int[] e, int[] r, int base, int t, final Step step) {
+        int k = 0;
+        for(int a : e){
+            if (!isApplicable(a, t)) {
+                continue;
+            }
+            while (k < r.length && r[k] <= a) {
+                k++;
+            }
+            if (k < r.length) {
+                step.actionDisjunctionList.add(-this.variables.action(a, t), this.variables.auxiliary(base + k, t));
+            }
+        }
+        for(k=0;k<r.length;k++){
+            int aux = this.variables.auxiliary(base + k, t);
+            step.actionDisjunctionList.add(-aux, -this.variables.action(r[k], t));
+            if (k + 1 < r.length) {
+                step.actionDisjunctionList.add(-aux, this.variables.auxiliary(base + k + 1, t));
+            }
+        }
+    }
+
+    private boolean isApplicable(int action, int step) {
+        return this.graph == null || this.graph.isApplicable(action, step);
+    }
+
+    /*
+     * Pairs of interfering actions: one deletes a positive precondition (or adds a negative precondition) of the
+     * other. For each action only the partners of higher index are kept.
+     */
+    private static int[][] interference(final ActionTable table) {
+        final int nb_actions = table.getNbActions();
+        final int[][] interference = new int[nb_actions][];
+        final int[] stamp = new int[nb_actions];
+        final int[] buffer = new int[nb_actions];
+        Arrays.fill(stamp, -1);
+        for(int a=0;a<nb_actions;a++){
+            int n = 0;
+            for(int fluent : table.getDeleteEffects(a)){
+                n = mark(table.getRequirers(fluent), a, stamp, buffer, n);
+            }
+            for(int fluent : table.getPositivePreconditions(a)){
+                n = mark(table.getDeleters(fluent), a, stamp, buffer, n);
+            }
+            for(int fluent : table.getAddEffects(a)){
+                n = mark(table.getNegativeRequirers(fluent), a, stamp, buffer, n);
+            }
+            for(int fluent : table.getNegativePreconditions(a)){
+                n = mark(table.getAdders(fluent), a, stamp, buffer, n);
+            }
+            interference[a] = Arrays.copyOf(buffer, n);
+            Arrays.sort(interference[a]);
+        }
+        return interference;
+    }
+
+    private static int mark(int[] actions, int a, int[] stamp, int[] buffer, int n) {
+        for(int b : actions){
+            if (b > a && stamp[b] != a) {
+                stamp[b] = a;
+                buffer[n++] = b;
+            }
+        }
+        return n;
+    }
+
+    /*
+     * SAT encoding for next step: only the new transition and the goal of the new horizon are encoded
      */
     public void next() {
-        this.steps++;
-        encode(this.steps-1, this.steps);
+        extend(this.steps + 1);
+    }
+
+    /*
+     * SAT encoding up to the horizon steps in one pass: the transitions and the goals of all the new horizons are
+     * encoded at once. The horizons already encoded are not encoded again: if steps is one of them, the clauses of
+     * the previous call are dropped (they must have been handed to the solver) and there is nothing new.
+     */
+    public void extend(int steps) {
+        if (steps > this.steps) {
+            final int from = this.steps;
+            this.steps = steps;
+            encode(from, steps);
+        } else {
+            this.currentDimacs.clear();
+            this.currentGoal.clear();
+            Arrays.fill(this.counts, 0);
+        }
+    }
+
+    /*
+     * Frees the chunks of the clause stores kept off the heap, once the search is over
+     */
+    public void release() {
+        this.currentDimacs.release();
+        this.currentGoal.release();
+    }
+
+    /*
+     * Literal to assume to require the goal at the last step of the current horizon
+     */
+    public int getGoalSelector() {
+        return getGoalSelector(this.steps);
+    }
+
+    public int getGoalSelector(int steps) {
+        return this.variables.auxiliary(this.goalSelector, steps);
+    }
+
+    /*
+     * Horizon proven unsatisfiable: its goal selector is disabled for good. The unit clause is appended to the
+     * current encoding, so this must be called after the current clauses have been handed to the solver
+     */
+    public void refute(int steps) {
+        this.currentDimacs.add(-getGoalSelector(steps));
     }
 
     public String toString(final List<Integer> clause, final Problem problem) {
-        final int nb_fluents = problem.getFluents().size();
         List<Integer> dejavu = new ArrayList<Integer>();
         String t = "[";
         String u = "";
         int tmp = 1;
-        int [] couple;
         int bitnum;
         int step;
         for (Integer x : clause) {
-            if (x > 0) {
-                couple = unpair(x);
-                bitnum = couple[0];
-                step = couple[1];
-            } else {
-                couple = unpair(- x);
-                bitnum = - couple[0];
-                step = couple[1];
-            }
+            bitnum = x > 0 ? this.variables.index(x) : - this.variables.index(x);
+            step = this.variables.step(x);
             t = t + "(" + bitnum + ", " + step + ")";
             t = (tmp == clause.size()) ? t + "]\n" : t + " + ";
             tmp++;
@@ -248,11 +890,11 @@ public final class SATEncoding {
             if (!dejavu.contains(b)) {
                 dejavu.add(b);
                 u = u + b + " >> ";
-                if (nb_fluents >= b) {
-                    Fluent fluent = problem.getFluents().get(b - 1);
+                if (this.variables.isFluent(x)) {
+                    Fluent fluent = problem.getFluents().get(b);
                     u = u + problem.toString(fluent)  + "\n";
                 } else {
-                    u = u + problem.toShortString(problem.getActions().get(b - nb_fluents)) + "\n";
+                    u = u + problem.toShortString(problem.getActions().get(this.variables.actionOf(x))) + "\n";
                 }
             }
         }
@@ -261,47 +903,125 @@ public final class SATEncoding {
 
     public Plan extractPlan(final List<Integer> solution, final Problem problem) {
         Plan plan = new SequentialPlan();
-        HashMap<Integer, Action> sequence = new HashMap<Integer, Action>();
-        final int nb_fluents = problem.getFluents().size();
-        int[] couple;
-        int bitnum;
-        int step;
+        List<Integer> asserted = new ArrayList<Integer>();
         for (Integer x : solution) {
-            if (x > 0) {
-                couple = unpair(x);
-                bitnum = couple[0];
+            // This is a positive (asserted) action leading to a state of the horizon
+            if (x > 0 && this.variables.isAction(x) && this.variables.step(x) < this.steps) {
+                asserted.add(x);
+            }
+        }
+
+        // Variables are numbered by step then by action index: the actions of a parallel step are linearized in
+        // the order of their index, which is a valid order for every step semantics
+        Collections.sort(asserted);
+        for (Integer x : asserted) {
+            plan.add(plan.size(), problem.getActions().get(this.variables.actionOf(x)));
+        }
+        return plan;
+    }
+
+    /*
+     * Number of clauses of the given kind generated by the last encoding (the whole horizon after the
+     * constructor, the new step after next()), the clause added by refute() aside
+     */
+    public int getClauseCount(ClauseKind kind) {
+        return this.counts[kind.ordinal()];
+    }
+
+    /*
+     * Indices of the actions of the plan in a model, the actions of a parallel step being linearized in the order of
+     * their index as in extractPlan(). Only the action variables of the steps are looked up in the model.
+     */
+    public int[] decodePlan(final int[] model) {
+        return decodePlan(model, this.steps);
+    }
+
+    /*
+     * Plan of a model found under the goal selector of the horizon steps, at most the current one: the actions of
+     * the later steps are left out
+     */
+    public int[] decodePlan(final int[] model, int steps) {
+        final int[] values = isSorted(model) ? model : indexed(model);
+        int[] plan = new int[steps];
+        int n = 0;
+        for(int t=1;t<steps;t++){
+            for(int a=0;a<this.nb_actions;a++){
+                if (valueOf(values, this.variables.action(a, t)) > 0) {
+                    if (n == plan.length) {
+                        plan = Arrays.copyOf(plan, 2 * n);
+                    }
+                    plan[n++] = a;
+                }
+            }
+        }
+        return Arrays.copyOf(plan, n);
+    }
+
+    /*
+     * Literal of the variable v in a model sorted by variable, 0 if the model does not assign v. SAT4J lists the
+     * variables of its clauses in increasing order: v is at v - 1 unless some variables before it are unused.
+     */
+    private static int valueOf(final int[] model, int v) {
+        if (v <= model.length && Math.abs(model[v - 1]) == v) {
+            return model[v - 1];
+        }
+        int low = 0;
+        int high = Math.min(v, model.length) - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int x = Math.abs(model[middle]);
+            if (x < v) {
+                low = middle + 1;
+            } else if (x > v) {
+                high = middle - 1;
             } else {
-                couple = unpair(-x);
-                bitnum = -couple[0];
+                return model[middle];
             }
-            step = couple[1];
-            // This is a positive (asserted) action
-            if (bitnum > nb_fluents) {
-                final Action action = problem.getActions().get(bitnum - nb_fluents);
-                sequence.put(step, action);
+        }
+        return 0;
+    }
+
+    private static boolean isSorted(final int[] model) {
+        for (int i = 1; i < model.length; i++) {
+            if (Math.abs(model[i]) <= Math.abs(model[i - 1])) {
+                return false;
             }
         }
+        return true;
+    }
 
-        for (int s = sequence.keySet().size(); s > 0 ; s--) {
-            plan.add(0, sequence.get(s));
+    /*
+     * Copy of a model holding the literal of each variable v at v - 1, the variables it does not assign being false
+     */
+    private static int[] indexed(final int[] model) {
+        int size = 0;
+        for (int x : model) {
+            size = Math.max(size, Math.abs(x));
         }
-        return plan;
+        final int[] values = new int[size];
+        for (int v = 1; v <= size; v++) {
+            values[v - 1] = -v;
+        }
+        for (int x : model) {
+            if (x != 0) {
+                values[Math.abs(x) - 1] = x;
+            }
+        }
+        return values;
     }
-    
-    // Cantor paring function generates unique numbers
-    private static int pair(int num, int step) {
-        return (int) (0.5 * (num + step) * (num + step + 1) + step);
+
+    /*
+     * Template captured or given to the constructor, null if none yet
+     */
+    public Template getTemplate() {
+        return this.template == null ? null : new Template(this.template, this.templateStep, this.templateCounts.clone());
     }
 
-    private static int[] unpair(int z) {
-        /*
-        Cantor unpair function is the reverse of the pairing function. It takes a single input
-        and returns the two corespoding values.
-        */
-        int t = (int) (Math.floor((Math.sqrt(8 * z + 1) - 1) / 2));
-        int bitnum = t * (t + 3) / 2 - z;
-        int step = z - t * (t + 1) / 2;
-        return new int[]{bitnum, step}; //Returning an array containing the two numbers
+    /*
+     * Number of SAT variables used by the current encoding
+     */
+    public int getNbVariables() {
+        return this.variables.size(this.steps);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.Map;
+
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * This interface defines the SAT solvers used by the planner. Clauses are handed over incrementally, horizon after
+ * horizon, and each query checks the clauses added so far under assumption literals. It is implemented in process
+ * by SolverPortfolio (SAT4J) and out of process by ExternalSolverBackend.
+ *
+ * @version 0.1 - 20.04.2024
+ */
+public interface SolverBackend {
+
+    /**
+     * Grows the solver to at least howmany variables.
+     */
+    void newVar(int howmany);
+
+    /**
+     * Timeout of a single query in milliseconds.
+     */
+    void setTimeoutMs(long millis);
+
+    void addClauses(ClauseStore clauses) throws ContradictionException;
+
+    /**
+     * Checks the clauses added so far, the assumption literals being true.
+     *
+     * @throws TimeoutException if the solver gives no answer in time.
+     */
+    boolean isSatisfiable(int[] assumptions) throws TimeoutException;
+
+    /**
+     * Literals of the model found by the last satisfiable query.
+     */
+    int[] model();
+
+    /**
+     * Search counters of the solver (conflicts, decisions, propagations, learnedclauses, ...), cumulated over all
+     * the queries since its creation. Empty if the solver does not report them.
+     */
+    Map<String, Number> getStat();
+
+    /**
+     * Stops the running query, if any; it then ends with a TimeoutException.
+     */
+    void cancel();
+
+    /**
+     * Releases the threads or processes of the solver.
+     */
+    void shutdown();
+}
@@ -0,0 +1,219 @@
+package fr.uga.pddl4j.yasp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * This class implements a portfolio of differently configured SAT4J solvers fed with the same clauses. Each query
+ * runs all the solvers in parallel threads: the first definitive answer wins and the other solvers are stopped with
+ * expireTimeout(). The number of wins of each configuration is recorded, so that the portfolio can be trimmed for a
+ * given domain. A portfolio of one solver runs in the calling thread: it is the in-process SAT4J backend.
+ *
+ * @version 0.1 - 19.04.2024
+ */
+public final class SolverPortfolio implements SolverBackend {
+
+    /**
+     * Configurations used by default: different restart, phase and learning strategies.
+     */
+    public static final String[] DEFAULT_PORTFOLIO = {
+        "Default", "Glucose21", "DefaultMS21PhaseSaving", "MiniLearningHeapRsatExpSimpLuby"
+    };
+
+    /*
+     * Period in milliseconds at which the solvers still running are stopped again: SAT4J clears the request to stop
+     * when a query starts, so a solver whose thread had not started yet misses it
+     */
+    private static final long STOP = 10;
+
+    private final String[] names;
+    private final ISolver[] solvers;
+    private final ExecutorService pool;
+    private final Map<String, Integer> wins = new LinkedHashMap<String, Integer>();
+    private final VecInt buffer = new VecInt();
+    private int winner = -1;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a portfolio from SAT4J solver names (see SolverFactory.solverNames()).
+     */
+    public SolverPortfolio(final String... names) {
+        if (names.length == 0) {
+            throw new IllegalArgumentException("Empty solver portfolio");
+        }
+        this.names = names.clone();
+        this.solvers = new ISolver[names.length];
+        for (int i = 0; i < names.length; i++) {
+            this.solvers[i] = SolverFactory.instance().createSolverByName(names[i]);
+            if (this.solvers[i] == null) {
+                throw new IllegalArgumentException("Unknown SAT4J solver: " + names[i]);
+            }
+            this.wins.put(names[i], 0);
+        }
+        this.pool = names.length > 1 ? Executors.newFixedThreadPool(names.length) : null;
+    }
+
+    @Override
+    public void setTimeoutMs(long millis) {
+        for (ISolver solver : this.solvers) {
+            solver.setTimeoutMs(millis);
+        }
+    }
+
+    public void setExpectedNumberOfClauses(int nb) {
+        for (ISolver solver : this.solvers) {
+            solver.setExpectedNumberOfClauses(nb);
+        }
+    }
+
+    @Override
+    public void newVar(int howmany) {
+        for (ISolver solver : this.solvers) {
+            solver.newVar(howmany);
+        }
+    }
+
+    @Override
+    public void addClauses(final ClauseStore clauses) throws ContradictionException {
+        for (ISolver solver : this.solvers) {
+            YetAnotherSATPlanner.addClauses(solver, clauses, this.buffer);
+        }
+    }
+
+    /**
+     * Runs all the solvers under the given assumptions and returns the first definitive answer.
+     *
+     * @throws TimeoutException if no solver answers in time.
+     */
+    @Override
+    public boolean isSatisfiable(final int[] assumptions) throws TimeoutException {
+        this.winner = -1;
+        this.cancelled = false;
+        if (this.pool == null) {
+            final boolean sat = this.solvers[0].isSatisfiable(new VecInt(assumptions));
+            win(0);
+            return sat;
+        }
+        final CompletionService<Boolean> race = new ExecutorCompletionService<Boolean>(this.pool);
+        final List<Future<Boolean>> runs = new ArrayList<Future<Boolean>>();
+        final Map<Future<Boolean>, Integer> index = new LinkedHashMap<Future<Boolean>, Integer>();
+        for (int i = 0; i < this.solvers.length; i++) {
+            final ISolver solver = this.solvers[i];
+            final Future<Boolean> run = race.submit(() -> solver.isSatisfiable(new VecInt(assumptions)));
+            runs.add(run);
+            index.put(run, i);
+        }
+        Boolean answer = null;
+        try {
+            int pending = runs.size();
+            while (answer == null && pending > 0 && !this.cancelled) {
+                final Future<Boolean> run = race.poll(STOP, TimeUnit.MILLISECONDS);
+                if (run == null) {
+                    continue;
+                }
+                pending--;
+                try {
+                    answer = run.get();
+                    win(index.get(run));
+                } catch (ExecutionException e) {
+                    // This solver ran out of time or was stopped: wait for the others
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Stop the losers and wait for them: a running solver cannot receive new clauses
+            boolean interrupted = Thread.interrupted();
+            for (int i = 0; i < runs.size(); i++) {
+                final Future<Boolean> run = runs.get(i);
+                // A query dropped by shutdown() never completes: the pool terminates once the others are done
+                while (!run.isDone() && !this.pool.isTerminated()) {
+                    this.solvers[i].expireTimeout();
+                    try {
+                        run.get(STOP, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException | java.util.concurrent.TimeoutException e) {
+                        // Expected for the stopped solvers, or not started yet
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (answer == null) {
+            throw new TimeoutException("No solver of the portfolio answered");
+        }
+        return answer;
+    }
+
+    /**
+     * Model found by the winner of the last query.
+     */
+    @Override
+    public int[] model() {
+        return this.solvers[this.winner].model();
+    }
+
+    /**
+     * Counters of all the configurations summed up: the work done by the whole portfolio.
+     */
+    @Override
+    public Map<String, Number> getStat() {
+        final Map<String, Number> stat = new LinkedHashMap<String, Number>();
+        for (ISolver solver : this.solvers) {
+            for (Map.Entry<String, Number> counter : solver.getStat().entrySet()) {
+                stat.merge(counter.getKey(), counter.getValue().longValue(), (a, b) -> a.longValue() + b.longValue());
+            }
+        }
+        return stat;
+    }
+
+    public String getWinner() {
+        return this.winner < 0 ? null : this.names[this.winner];
+    }
+
+    /**
+     * Number of queries won by each configuration.
+     */
+    public Map<String, Integer> getWins() {
+        return this.wins;
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+        for (ISolver solver : this.solvers) {
+            solver.expireTimeout();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        cancel();
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    private void win(int solver) {
+        this.winner = solver;
+        this.wins.merge(this.names[solver], 1, Integer::sum);
+    }
+}
@@ -0,0 +1,27 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This enumeration defines the semantics of a step of the SAT encoding, i.e. which sets of actions may be applied
+ * at the same time step.
+ *
+ * @version 0.1 - 15.04.2024
+ */
+public enum StepSemantics {
+
+    /**
+     * At most one action per step: every pair of actions is mutually exclusive.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Forall-step semantics: actions of a step can be applied in any order. Only interfering pairs (one action deletes a
+     * precondition of the other) are mutually exclusive.
+     */
+    FORALL,
+
+    /**
+     * Exists-step semantics: actions of a step can be applied in the fixed order of their indexes. Conflicts are
+     * forbidden with the linear-size chain encoding of Rintanen, Heljanko and Niemela.
+     */
+    EXISTS;
+}
@@ -0,0 +1,487 @@
+package fr.uga.pddl4j.yasp;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import fr.uga.pddl4j.parser.Symbol;
+import fr.uga.pddl4j.problem.Fluent;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+
+/**
+ * This class implements the detection of object symmetries in a grounded planning problem. Two objects of the same
+ * types are interchangeable when swapping them maps every fluent and every action onto another one, the initial
+ * state and the goal onto themselves, and the preconditions and effects of each action onto those of its image:
+ * two trucks of the same city with no role in the goal, two packages at the same place with the same destination.
+ * The swaps in the grounding also account for the static facts compiled away by PDDL4J, since a truck of another
+ * city has no grounded action in this one.
+ *
+ * Interchangeability is an equivalence relation: each class of interchangeable objects o1, ..., ok is generated by
+ * the swaps (o1 o2), ..., (ok-1 ok), kept as the pairs of actions they swap. SATEncoding breaks them with lex-leader
+ * constraints on the action variables.
+ *
+ * The fluents and the actions are indexed once by their symbol and arguments, and each object keeps the fluents and
+ * the actions it appears in: a swap only looks at those of its two objects and at the actions using their fluents.
+ * These keys and the types of the objects (see Keys) are all the detection needs from the problem, so that
+ * ProblemCache can store them and detect the symmetries of a cached problem only when they are broken.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class Symmetries {
+
+    /**
+     * The fluents (predicate and arguments), the actions (name and arguments) and the types of the objects of a
+     * grounded problem as int arrays, indexed like the problem.
+     */
+    public static final class Keys {
+        private final int[][] fluents;
+        private final int[][] actions;
+        private final int[][] types;
+
+        private Keys(final int[][] fluents, final int[][] actions, final int[][] types) {
+            this.fluents = fluents;
+            this.actions = actions;
+            this.types = types;
+        }
+
+        public Keys(final Problem problem) {
+            this.fluents = new int[problem.getFluents().size()][];
+            for (int f = 0; f < this.fluents.length; f++) {
+                final Fluent fluent = problem.getFluents().get(f);
+                this.fluents[f] = key(fluent.getSymbol(), fluent.getArguments());
+            }
+            final Map<String, Integer> names = new HashMap<String, Integer>();
+            this.actions = new int[problem.getActions().size()][];
+            for (int a = 0; a < this.actions.length; a++) {
+                final Action action = problem.getActions().get(a);
+                final Integer name = names.computeIfAbsent(action.getName(), k -> names.size());
+                this.actions[a] = key(name, action.getInstantiations());
+            }
+            final int nb_objects = problem.getConstantSymbols().size();
+            final List<List<Integer>> types = new ArrayList<List<Integer>>();
+            for (int o = 0; o < nb_objects; o++) {
+                types.add(new ArrayList<Integer>());
+            }
+            for (Map.Entry<Integer, Set<Symbol<Integer>>> domain : problem.getDomains().entrySet()) {
+                for (Symbol<Integer> object : domain.getValue()) {
+                    types.get(object.getValue()).add(domain.getKey());
+                }
+            }
+            this.types = new int[nb_objects][];
+            for (int o = 0; o < nb_objects; o++) {
+                this.types[o] = types.get(o).stream().mapToInt(Integer::intValue).sorted().toArray();
+            }
+        }
+
+        /*
+         * Binary form: the number of fluents, of actions and of objects, then each row as its length followed by
+         * its elements
+         */
+        int serializedSize() {
+            int size = 3;
+            for (int[][] rows : new int[][][] {this.fluents, this.actions, this.types}) {
+                for (int[] row : rows) {
+                    size += 1 + row.length;
+                }
+            }
+            return size;
+        }
+
+        void write(final IntBuffer out) {
+            out.put(this.fluents.length);
+            out.put(this.actions.length);
+            out.put(this.types.length);
+            for (int[][] rows : new int[][][] {this.fluents, this.actions, this.types}) {
+                for (int[] row : rows) {
+                    out.put(row.length);
+                    out.put(row);
+                }
+            }
+        }
+
+        static Keys read(final IntBuffer in) {
+            final int[][] fluents = new int[in.get()][];
+            final int[][] actions = new int[in.get()][];
+            final int[][] types = new int[in.get()][];
+            for (int[][] rows : new int[][][] {fluents, actions, types}) {
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = new int[in.get()];
+                    in.get(rows[i]);
+                }
+            }
+            return new Keys(fluents, actions, types);
+        }
+    }
+
+    /*
+     * A fluent (predicate and arguments) or an action (name and arguments) as an int array
+     */
+    private static final class Key {
+        private final int[] values;
+        private final int hash;
+
+        private Key(final int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Key && Arrays.equals(this.values, ((Key) other).values);
+        }
+    }
+
+    private final ActionTable table;
+
+    /*
+     * Deadline of the run, checked before each swap is tried; none if null
+     */
+    private final Deadline deadline;
+
+    /*
+     * Keys of the fluents and of the actions, and the index of each key
+     */
+    private final int[][] fluentKeys;
+    private final int[][] actionKeys;
+    private final Map<Key, Integer> fluents = new HashMap<Key, Integer>();
+    private final Map<Key, Integer> actions = new HashMap<Key, Integer>();
+
+    /*
+     * Per object: the fluents and the actions whose arguments contain it
+     */
+    private final int[][] fluentsOf;
+    private final int[][] actionsOf;
+
+    /*
+     * Membership of each fluent in the initial state and in the goal
+     */
+    private final boolean[] initial;
+    private final boolean[] positiveGoal;
+    private final boolean[] negativeGoal;
+
+    /*
+     * Image of the fluents and of the actions by the swap being checked (the identity between two swaps), a mark per
+     * fluent and a stamp per action
+     */
+    private final int[] fluentImage;
+    private final int[] actionImage;
+    private final boolean[] mark;
+    private final int[] stamp;
+    private int nb_stamps = 0;
+
+    private final List<int[]> generators = new ArrayList<int[]>();
+    private int nb_classes;
+
+    /**
+     * Detects the symmetries of a problem.
+     *
+     * @param problem  the grounded problem.
+     * @param table    the action table built from the problem.
+     * @param deadline the deadline of the run, none if null.
+     * @throws CancellationException if the deadline is over or cancelled.
+     */
+    public Symmetries(final Problem problem, final ActionTable table, final Deadline deadline) {
+        this(new Keys(problem), table, deadline);
+    }
+
+    /**
+     * Detects the symmetries of a problem from its keys.
+     *
+     * @param keys     the keys of the grounded problem.
+     * @param table    the action table built from the problem.
+     * @param deadline the deadline of the run, none if null.
+     * @throws CancellationException if the deadline is over or cancelled.
+     */
+    public Symmetries(final Keys keys, final ActionTable table, final Deadline deadline) {
+        this.table = table;
+        this.deadline = deadline;
+        final int nb_fluents = table.getNbFluents();
+        final int nb_actions = table.getNbActions();
+        final int nb_objects = keys.types.length;
+        this.fluentImage = new int[nb_fluents];
+        this.actionImage = new int[nb_actions];
+        this.mark = new boolean[nb_fluents];
+        this.stamp = new int[nb_actions];
+        this.initial = members(table.getInitialState(), nb_fluents);
+        this.positiveGoal = members(table.getPositiveGoal(), nb_fluents);
+        this.negativeGoal = members(table.getNegativeGoal(), nb_fluents);
+
+        this.fluentKeys = keys.fluents;
+        for (int f = 0; f < nb_fluents; f++) {
+            this.fluents.put(new Key(this.fluentKeys[f]), f);
+            this.fluentImage[f] = f;
+        }
+        this.actionKeys = keys.actions;
+        for (int a = 0; a < nb_actions; a++) {
+            this.actions.put(new Key(this.actionKeys[a]), a);
+            this.actionImage[a] = a;
+        }
+        this.fluentsOf = occurrences(this.fluentKeys, nb_objects);
+        this.actionsOf = occurrences(this.actionKeys, nb_objects);
+
+        // Candidates: the objects of exactly the same types
+        final Map<Key, List<Integer>> candidates = new HashMap<Key, List<Integer>>();
+        for (int o = 0; o < nb_objects; o++) {
+            candidates.computeIfAbsent(new Key(keys.types[o]), k -> new ArrayList<Integer>()).add(o);
+        }
+
+        // Each object joins the first class whose representative it can be swapped with
+        for (List<Integer> objects : candidates.values()) {
+            final List<List<Integer>> classes = new ArrayList<List<Integer>>();
+            for (int o : objects) {
+                List<Integer> joined = null;
+                for (List<Integer> c : classes) {
+                    checkDeadline();
+                    if (swap(c.get(0), o) != null) {
+                        joined = c;
+                        break;
+                    }
+                }
+                if (joined == null) {
+                    joined = new ArrayList<Integer>();
+                    classes.add(joined);
+                }
+                joined.add(o);
+            }
+            for (List<Integer> c : classes) {
+                if (c.size() < 2) {
+                    continue;
+                }
+                this.nb_classes++;
+                for (int i = 1; i < c.size(); i++) {
+                    checkDeadline();
+                    final int[] pairs = swap(c.get(i - 1), c.get(i));
+                    if (pairs.length > 0) {
+                        this.generators.add(pairs);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Generators of the symmetries, in the form expected by ActionTable.withSymmetries().
+     */
+    public int[][] getGenerators() {
+        return this.generators.toArray(new int[0][]);
+    }
+
+    /**
+     * Number of classes of at least two interchangeable objects.
+     */
+    public int getNbClasses() {
+        return this.nb_classes;
+    }
+
+    private void checkDeadline() {
+        if (this.deadline != null) {
+            this.deadline.check();
+        }
+    }
+
+    /*
+     * Pairs of actions swapped by the swap of the objects p and q, null if it is not a symmetry. Only the fluents and
+     * the actions of p and q move: the images of the others stay the identity.
+     */
+    private int[] swap(int p, int q) {
+        final int[] movedFluents = union(this.fluentsOf[p], this.fluentsOf[q]);
+        final int[] movedActions = union(this.actionsOf[p], this.actionsOf[q]);
+        try {
+            for (int f : movedFluents) {
+                final Integer image = this.fluents.get(new Key(swap(this.fluentKeys[f], p, q)));
+                if (image == null) {
+                    return null;
+                }
+                this.fluentImage[f] = image;
+                // The swap is an involution: checking each moved fluent checks its image too
+                if (this.initial[f] != this.initial[image] || this.positiveGoal[f] != this.positiveGoal[image]
+                        || this.negativeGoal[f] != this.negativeGoal[image]) {
+                    return null;
+                }
+            }
+            int nb_pairs = 0;
+            for (int a : movedActions) {
+                final Integer image = this.actions.get(new Key(swap(this.actionKeys[a], p, q)));
+                if (image == null) {
+                    return null;
+                }
+                this.actionImage[a] = image;
+                if (image != a) {
+                    nb_pairs++;
+                }
+            }
+            // The actions of p and q, and the actions of the other objects using a fluent of p or q
+            this.nb_stamps++;
+            for (int a : movedActions) {
+                if (!isImage(a)) {
+                    return null;
+                }
+            }
+            for (int f : movedFluents) {
+                if (!isImage(this.table.getAdders(f)) || !isImage(this.table.getDeleters(f))
+                        || !isImage(this.table.getRequirers(f)) || !isImage(this.table.getNegativeRequirers(f))) {
+                    return null;
+                }
+            }
+            final int[] pairs = new int[nb_pairs];
+            int n = 0;
+            for (int a : movedActions) {
+                if (a < this.actionImage[a]) {
+                    pairs[n++] = a;
+                    pairs[n++] = this.actionImage[a];
+                }
+            }
+            return pairs;
+        } finally {
+            for (int f : movedFluents) {
+                this.fluentImage[f] = f;
+            }
+            for (int a : movedActions) {
+                this.actionImage[a] = a;
+            }
+        }
+    }
+
+    /*
+     * The preconditions and the effects of each action are mapped onto those of its image
+     */
+    private boolean isImage(final int[] actions) {
+        for (int a : actions) {
+            if (!isImage(a)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isImage(int a) {
+        if (this.stamp[a] == this.nb_stamps) {
+            return true;
+        }
+        this.stamp[a] = this.nb_stamps;
+        final ActionTable table = this.table;
+        final int image = this.actionImage[a];
+        return isImage(table.getPositivePreconditions(a), table.getPositivePreconditions(image))
+            && isImage(table.getNegativePreconditions(a), table.getNegativePreconditions(image))
+            && isImage(table.getAddEffects(a), table.getAddEffects(image))
+            && isImage(table.getDeleteEffects(a), table.getDeleteEffects(image));
+    }
+
+    /*
+     * The image of the set of fluents from is the set to
+     */
+    private boolean isImage(final int[] from, final int[] to) {
+        if (from.length != to.length) {
+            return false;
+        }
+        for (int f : to) {
+            this.mark[f] = true;
+        }
+        boolean image = true;
+        for (int f : from) {
+            image &= this.mark[this.fluentImage[f]];
+        }
+        for (int f : to) {
+            this.mark[f] = false;
+        }
+        return image;
+    }
+
+    /*
+     * Symbol followed by the arguments
+     */
+    private static int[] key(int symbol, final int[] arguments) {
+        final int[] key = new int[arguments.length + 1];
+        key[0] = symbol;
+        System.arraycopy(arguments, 0, key, 1, arguments.length);
+        return key;
+    }
+
+    /*
+     * Per object, the increasing indices of the keys whose arguments contain it
+     */
+    private static int[][] occurrences(final int[][] keys, int nb_objects) {
+        final int[] counts = new int[nb_objects];
+        final int[] last = new int[nb_objects];
+        Arrays.fill(last, -1);
+        for (int k = 0; k < keys.length; k++) {
+            for (int i = 1; i < keys[k].length; i++) {
+                if (last[keys[k][i]] != k) {
+                    last[keys[k][i]] = k;
+                    counts[keys[k][i]]++;
+                }
+            }
+        }
+        final int[][] occurrences = new int[nb_objects][];
+        for (int o = 0; o < nb_objects; o++) {
+            occurrences[o] = new int[counts[o]];
+            counts[o] = 0;
+        }
+        Arrays.fill(last, -1);
+        for (int k = 0; k < keys.length; k++) {
+            for (int i = 1; i < keys[k].length; i++) {
+                final int o = keys[k][i];
+                if (last[o] != k) {
+                    last[o] = k;
+                    occurrences[o][counts[o]++] = k;
+                }
+            }
+        }
+        return occurrences;
+    }
+
+    /*
+     * Union of two increasing arrays, increasing
+     */
+    private static int[] union(final int[] a, final int[] b) {
+        final int[] union = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || i < a.length && a[i] < b[j]) {
+                union[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                union[n++] = b[j++];
+            } else {
+                union[n++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(union, n);
+    }
+
+    private static boolean[] members(final int[] set, int n) {
+        final boolean[] members = new boolean[n];
+        for (int f : set) {
+            members[f] = true;
+        }
+        return members;
+    }
+
+    /*
+     * The key with the objects p and q swapped; the symbol, first, is not an object
+     */
+    private static int[] swap(final int[] key, int p, int q) {
+        final int[] swapped = Arrays.copyOf(key, key.length);
+        for (int i = 1; i < swapped.length; i++) {
+            if (swapped[i] == p) {
+                swapped[i] = q;
+            } else if (swapped[i] == q) {
+                swapped[i] = p;
+            }
+        }
+        return swapped;
+    }
+}
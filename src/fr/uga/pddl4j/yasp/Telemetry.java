@@ -0,0 +1,207 @@
+package fr.uga.pddl4j.yasp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class implements the per-horizon telemetry of the planner: the size of the encoding by kind of clause, the
+ * time spent encoding, handing the clauses to the solver and solving, the search counters of the solver and the
+ * peak heap. Each horizon is committed as a HorizonEvent to the flight recorder and, if a file is given, appended
+ * to it as one JSON object per line.
+ *
+ * The counters of SAT4J are cumulated over the queries of a solver: the telemetry records the difference between
+ * the counters before and after the query. The peak heap is the sum of the peaks of the heap memory pools since the
+ * previous horizon was recorded.
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public final class Telemetry implements Closeable {
+
+    /*
+     * Counters of SAT4J recorded for each horizon
+     */
+    private static final String[] COUNTERS = {"conflicts", "decisions", "propagations", "learnedclauses"};
+
+    private final String instance;
+
+    /*
+     * JSON lines output, null when only the flight recorder events are emitted
+     */
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Creates the telemetry of a run emitting the flight recorder events only.
+     *
+     * @param instance the name of the problem, copied in every record.
+     */
+    public Telemetry(final String instance) {
+        this.instance = instance;
+        this.writer = null;
+    }
+
+    /**
+     * Creates the telemetry of a run.
+     *
+     * @param instance the name of the problem, copied in every record.
+     * @param file     the JSON lines file, appended to.
+     * @throws IOException if the file cannot be opened.
+     */
+    public Telemetry(final String instance, final Path file) throws IOException {
+        this.instance = instance;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Records a horizon.
+     *
+     * @param steps    the number of steps of the horizon.
+     * @param result   SAT, UNSAT or UNKNOWN (timeout or error).
+     * @param sat      the encoding of the horizon; its clause counts are those of its last encoding.
+     * @param encode   time spent encoding, in milliseconds.
+     * @param transfer time spent handing the clauses to the solver, in milliseconds.
+     * @param solve    time spent solving, in milliseconds.
+     * @param before   counters of the solver before the query (empty for a new solver).
+     * @param after    counters of the solver after the query.
+     */
+    public synchronized void record(int steps, String result, final SATEncoding sat, long encode, long transfer,
+            long solve, final Map<String, Number> before, final Map<String, Number> after) {
+        final HorizonEvent event = new HorizonEvent();
+        event.instance = this.instance;
+        event.steps = steps;
+        event.result = result;
+        event.variables = sat.getNbVariables();
+        event.fixedClauses = sat.getClauseCount(ClauseKind.FIXED);
+        event.invariantClauses = sat.getClauseCount(ClauseKind.INVARIANT);
+        event.preconditionClauses = sat.getClauseCount(ClauseKind.PRECONDITION);
+        event.effectClauses = sat.getClauseCount(ClauseKind.EFFECT);
+        event.exclusionClauses = sat.getClauseCount(ClauseKind.EXCLUSION);
+        event.frameClauses = sat.getClauseCount(ClauseKind.FRAME);
+        event.symmetryClauses = sat.getClauseCount(ClauseKind.SYMMETRY);
+        event.landmarkClauses = sat.getClauseCount(ClauseKind.LANDMARK);
+        event.goalClauses = sat.getClauseCount(ClauseKind.GOAL);
+        event.relevanceClauses = sat.getClauseCount(ClauseKind.RELEVANCE);
+        event.encodeTime = encode;
+        event.transferTime = transfer;
+        event.solveTime = solve;
+        event.conflicts = delta(COUNTERS[0], before, after);
+        event.decisions = delta(COUNTERS[1], before, after);
+        event.propagations = delta(COUNTERS[2], before, after);
+        event.learnedClauses = delta(COUNTERS[3], before, after);
+        event.peakHeap = peakHeap();
+        event.commit();
+        if (this.writer != null) {
+            write(event);
+        }
+    }
+
+    /**
+     * Counters of a solver that has not run any query yet.
+     */
+    public static Map<String, Number> none() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write the telemetry: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void write(final HorizonEvent event) {
+        final StringBuilder line = this.line;
+        line.setLength(0);
+        line.append("{\"instance\":");
+        quote(line, event.instance);
+        line.append(",\"steps\":").append(event.steps);
+        line.append(",\"result\":\"").append(event.result).append('"');
+        line.append(",\"variables\":").append(event.variables);
+        line.append(",\"clauses\":{");
+        for (ClauseKind kind : ClauseKind.values()) {
+            line.append(kind.ordinal() == 0 ? "\"" : ",\"").append(kind.name().toLowerCase()).append("\":");
+            switch (kind) {
+                case FIXED: line.append(event.fixedClauses); break;
+                case INVARIANT: line.append(event.invariantClauses); break;
+                case PRECONDITION: line.append(event.preconditionClauses); break;
+                case EFFECT: line.append(event.effectClauses); break;
+                case EXCLUSION: line.append(event.exclusionClauses); break;
+                case FRAME: line.append(event.frameClauses); break;
+                case SYMMETRY: line.append(event.symmetryClauses); break;
+                case LANDMARK: line.append(event.landmarkClauses); break;
+                case GOAL: line.append(event.goalClauses); break;
+                case RELEVANCE: line.append(event.relevanceClauses); break;
+            }
+        }
+        line.append("},\"encodeMs\":").append(event.encodeTime);
+        line.append(",\"transferMs\":").append(event.transferTime);
+        line.append(",\"solveMs\":").append(event.solveTime);
+        line.append(",\"conflicts\":").append(event.conflicts);
+        line.append(",\"decisions\":").append(event.decisions);
+        line.append(",\"propagations\":").append(event.propagations);
+        line.append(",\"learnedClauses\":").append(event.learnedClauses);
+        line.append(",\"peakHeap\":").append(event.peakHeap);
+        line.append("}\n");
+        try {
+            this.writer.write(line.toString());
+            // One line per horizon even if the planner is killed
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write the telemetry: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Appends a JSON string
+     */
+    static void quote(final StringBuilder line, final String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < ' ') {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static long delta(final String counter, final Map<String, Number> before,
+            final Map<String, Number> after) {
+        final Number a = after.get(counter);
+        final Number b = before.get(counter);
+        return (a == null ? 0 : a.longValue()) - (b == null ? 0 : b.longValue());
+    }
+
+    /*
+     * Sum of the peaks of the heap pools, which are reset for the next horizon
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peak += pool.getPeakUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+        return peak;
+    }
+}
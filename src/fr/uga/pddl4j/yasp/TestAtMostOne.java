@@ -0,0 +1,107 @@
+package fr.uga.pddl4j.yasp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class checks the encodings of the "at most one action per step" constraint (see AtMostOne) on small sets of
+ * literals: the number of clauses and of auxiliary variables of each encoding, and, by enumerating every assignment,
+ * that an assignment of the literals extends to a model of the clauses if and only if at most one literal is true.
+ *
+ * Usage: TestAtMostOne
+ *
+ * @version 0.1 - 16.04.2024
+ */
+public class TestAtMostOne {
+
+    /*
+     * Largest set of literals whose assignments are all enumerated
+     */
+    private static final int MAX_ENUMERATED = 10;
+
+    /*
+     * Expected clauses and auxiliary variables of the product encoding: {n, clauses, auxiliaries}. Below 5 literals
+     * it is pairwise; 5 literals make a 3 x 2 grid, 9 a 3 x 3 grid, 10 a 4 x 3 grid, and 100 a 10 x 10 grid whose
+     * rows and columns are 4 x 3 grids.
+     */
+    private static final int[][] PRODUCT = {
+        {1, 0, 0}, {2, 1, 0}, {4, 6, 0}, {5, 14, 5}, {9, 24, 6}, {10, 29, 7}, {100, 258, 34},
+    };
+
+    public static void main(final String[] args) {
+        for (int n = 0; n <= MAX_ENUMERATED; n++) {
+            assertEquals("Auxiliaries of PAIRWISE for " + n, 0, AtMostOne.PAIRWISE.auxiliaries(n));
+            assertEquals("Clauses of PAIRWISE for " + n, n * (n - 1) / 2, encode(AtMostOne.PAIRWISE, n).size());
+            for (AtMostOne amo : new AtMostOne[] {AtMostOne.COUNTER, AtMostOne.LADDER}) {
+                assertEquals("Auxiliaries of " + amo + " for " + n, Math.max(0, n - 1), amo.auxiliaries(n));
+                assertEquals("Clauses of " + amo + " for " + n, n < 2 ? 0 : 3 * n - 4, encode(amo, n).size());
+            }
+        }
+        for (int[] expected : PRODUCT) {
+            final int n = expected[0];
+            assertEquals("Auxiliaries of PRODUCT for " + n, expected[2], AtMostOne.PRODUCT.auxiliaries(n));
+            assertEquals("Clauses of PRODUCT for " + n, expected[1], encode(AtMostOne.PRODUCT, n).size());
+        }
+        for (AtMostOne amo : AtMostOne.values()) {
+            for (int n = 0; n <= MAX_ENUMERATED; n++) {
+                checkModels(amo, n);
+            }
+            System.out.println(amo + ": at most one of 0 to " + MAX_ENUMERATED + " literals");
+        }
+        System.out.println("TestAtMostOne: OK");
+    }
+
+    /*
+     * Encodes at most one of the variables 1..n with the auxiliary variables n+1..n+auxiliaries(n)
+     */
+    private static ClauseStore encode(final AtMostOne amo, final int n) {
+        final int[] literals = new int[n];
+        for (int i = 0; i < n; i++) {
+            literals[i] = i + 1;
+        }
+        final int[] aux = new int[amo.auxiliaries(n)];
+        for (int i = 0; i < aux.length; i++) {
+            aux[i] = n + i + 1;
+        }
+        final ClauseStore clauses = new ClauseStore();
+        amo.encode(literals, n, aux, clauses);
+        return clauses;
+    }
+
+    /*
+     * Enumerates the assignments of the literals and of the auxiliary variables, bit v - 1 being the value of v
+     */
+    private static void checkModels(final AtMostOne amo, final int n) {
+        final int nb_variables = n + amo.auxiliaries(n);
+        final ClauseStore clauses = encode(amo, n);
+        clauses.forEach((literals, from, to) -> {
+            for (int i = from; i < to; i++) {
+                assertTrue(amo + " uses the unknown variable " + literals[i] + " for " + n,
+                    literals[i] != 0 && Math.abs(literals[i]) <= nb_variables);
+            }
+        });
+        final boolean[] extended = new boolean[1 << n];
+        for (long assignment = 0; assignment < 1L << nb_variables; assignment++) {
+            if (satisfies(clauses, assignment)) {
+                extended[(int) (assignment & ((1 << n) - 1))] = true;
+            }
+        }
+        for (int assignment = 0; assignment < 1 << n; assignment++) {
+            assertEquals(amo + " with the literals " + Integer.toBinaryString(assignment) + " true out of " + n,
+                Integer.bitCount(assignment) <= 1, extended[assignment]);
+        }
+    }
+
+    private static boolean satisfies(final ClauseStore clauses, final long assignment) {
+        final boolean[] satisfied = {true};
+        clauses.forEach((literals, from, to) -> {
+            boolean clause = false;
+            for (int i = from; i < to && !clause; i++) {
+                final boolean value = (assignment >> (Math.abs(literals[i]) - 1) & 1) == 1;
+                clause = literals[i] > 0 ? value : !value;
+            }
+            satisfied[0] &= clause;
+        });
+        return satisfied[0];
+    }
+}
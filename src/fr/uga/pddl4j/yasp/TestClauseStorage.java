@@ -0,0 +1,132 @@
+package fr.uga.pddl4j.yasp;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class checks that the clauses kept off the heap (see ClauseStorage) let the planner solve a problem whose
+ * formula does not fit in its heap. The planner runs in a child JVM with a small heap and an external solver, the
+ * SAT4J launcher in a JVM of its own, so that no clause has to be on the heap of the planner. problem_clauses moves
+ * 14 of its 100 packages with one truck: its 30 steps make about 2.4 million clauses and 4.9 million literals, some
+ * 29 MB, for a heap of 16 MB. With --clauses heap the child must run out of memory, with --clauses direct and mapped
+ * it must return a plan that PlanValidator accepts. It is run from the root of the repository.
+ *
+ * Usage: TestClauseStorage
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public class TestClauseStorage {
+
+    private static final String DOMAIN = "benchmarks/logistics/strips-typed/domain.pddl";
+
+    private static final String PROBLEM = "test_fixtures/problem_clauses.pddl";
+
+    /*
+     * The packages that stay keep their actions without relevance analysis, and the pairwise encoding of the one
+     * action per step constraint makes each step quadratic in the number of actions. Each step is encoded on the
+     * heap before it is moved off the heap: no step template is kept there.
+     */
+    private static final String[] OPTIONS = {"-s", "sequential", "-a", "pairwise", "--relevance", "false",
+        "--template", "false"};
+
+    private static final String HEAP = "16m";
+
+    /*
+     * Direct buffers are limited to the heap size unless told otherwise
+     */
+    private static final String DIRECT = "1g";
+
+    /*
+     * Time left to each child JVM, in minutes
+     */
+    private static final long LIMIT = 10;
+
+    /*
+     * Line printed by the child JVM once its plan is checked
+     */
+    private static final String VALID = "@valid\t";
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--child")) {
+            child(args[1]);
+            return;
+        }
+        final String heap = fork("heap");
+        assertTrue("The formula fits in the heap of the planner:\n" + heap, heap.contains("OutOfMemoryError"));
+        System.out.println(PROBLEM + " --clauses heap: out of memory with -Xmx" + HEAP);
+        for (String storage : new String[] {"direct", "mapped"}) {
+            final String output = fork(storage);
+            assertTrue("No valid plan with --clauses " + storage + ":\n" + output, output.contains(VALID));
+            final String line = output.substring(output.indexOf(VALID) + VALID.length()).split("\n")[0];
+            System.out.println(PROBLEM + " --clauses " + storage + ": " + line + " actions with -Xmx" + HEAP
+                + ", valid");
+        }
+        System.out.println("TestClauseStorage: OK");
+    }
+
+    /*
+     * Runs the planner in a child JVM with a small heap and returns all it printed
+     */
+    private static String fork(final String storage) throws Exception {
+        final List<String> command = new ArrayList<String>();
+        command.add(java());
+        command.add("-Xmx" + HEAP);
+        command.add("-XX:MaxDirectMemorySize=" + DIRECT);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TestClauseStorage.class.getName());
+        command.add("--child");
+        command.add(storage);
+        final File output = File.createTempFile("clauses", ".out");
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output).start();
+        try {
+            assertTrue("Timeout of the planner with --clauses " + storage,
+                process.waitFor(LIMIT, TimeUnit.MINUTES));
+            return new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            process.destroyForcibly();
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    /*
+     * Child JVM: solves the problem with the external solver and checks the plan
+     */
+    private static void child(final String storage) throws Exception {
+        final String solver = java() + " -cp lib/org.sat4j.core.jar org.sat4j.BasicLauncher /dev/stdin";
+        final List<String> options = new ArrayList<String>(Arrays.asList(OPTIONS));
+        options.addAll(Arrays.asList("--clauses", storage, "-x", solver));
+        final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+        planner.setLogLevel(LogLevel.OFF);
+        assertTrue("Invalid planner options " + options, planner.configure(options.toArray(new String[0]), 0));
+        final Problem problem = planner.instantiate(planner.parse(DOMAIN, PROBLEM));
+        final Plan plan = planner.solve(problem);
+        assertNotNull("No plan", plan);
+        final int[] actions = new int[plan.size()];
+        int i = 0;
+        for (Action action : plan.actions()) {
+            actions[i++] = problem.getActions().indexOf(action);
+        }
+        PlanValidator.validate(new ActionTable(problem), actions);
+        System.out.println(VALID + plan.size());
+        System.exit(0);
+    }
+
+    private static String java() {
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+}
@@ -0,0 +1,120 @@
+package fr.uga.pddl4j.yasp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import fr.uga.pddl4j.parser.DefaultParsedProblem;
+import fr.uga.pddl4j.parser.Parser;
+import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.planners.LogLevel;
+import fr.uga.pddl4j.problem.Problem;
+import fr.uga.pddl4j.problem.operator.Action;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * This class checks the symmetries detected by Symmetries on two fixtures of the problem_test domain. In
+ * problem_symmetry the two objects start and end at the same places: they form one class, generated by one swap
+ * that pairs every action of obj1 with the same action of obj2. In problem_test the objects swap places, so the
+ * swap of the objects does not fix the initial state and no symmetry is found. problem_symmetry is also solved with
+ * the symmetry breaking on a step template without planning graph, whose lex-leader chains must not restart at each
+ * copied step, and its detection must stop once its run is cancelled. It is run from the root of the repository.
+ *
+ * Usage: TestSymmetries
+ *
+ * @version 0.1 - 24.04.2024
+ */
+public class TestSymmetries {
+
+    private static final String DOMAIN = "problem_test/domain.pddl";
+
+    public static void main(final String[] args) throws Exception {
+        final Problem symmetric = instantiate("test_fixtures/problem_symmetry.pddl");
+        final Symmetries symmetries = new Symmetries(symmetric, new ActionTable(symmetric), null);
+        assertEquals("Classes of problem_symmetry", 1, symmetries.getNbClasses());
+        final int[][] generators = symmetries.getGenerators();
+        assertEquals("Generators of problem_symmetry", 1, generators.length);
+        final int obj1 = object(symmetric, "obj1");
+        final int obj2 = object(symmetric, "obj2");
+        final int[] pairs = generators[0];
+        assertEquals("Odd generator " + Arrays.toString(pairs), 0, pairs.length % 2);
+        final boolean[] paired = new boolean[symmetric.getActions().size()];
+        for (int i = 0; i < pairs.length; i += 2) {
+            final Action a = symmetric.getActions().get(pairs[i]);
+            final Action b = symmetric.getActions().get(pairs[i + 1]);
+            assertTrue("Unordered pair " + pairs[i] + " " + pairs[i + 1], pairs[i] < pairs[i + 1]);
+            assertEquals("Names of the pair " + pairs[i] + " " + pairs[i + 1], a.getName(), b.getName());
+            assertArrayEquals("Arguments of the pair " + pairs[i] + " " + pairs[i + 1],
+                swap(a.getInstantiations(), obj1, obj2), b.getInstantiations());
+            assertTrue("Action " + pairs[i] + " paired twice", !paired[pairs[i]] && !paired[pairs[i + 1]]);
+            paired[pairs[i]] = true;
+            paired[pairs[i + 1]] = true;
+        }
+        // Every action moves obj1 or obj2, so the swap moves every action
+        for (int a = 0; a < paired.length; a++) {
+            assertTrue("Action " + a + " is not paired", paired[a]);
+        }
+        System.out.println("problem_symmetry: 1 class, " + pairs.length / 2 + " pairs of actions");
+
+        // The detection stops with its run
+        final Deadline cancelled = new Deadline(0);
+        cancelled.cancel();
+        try {
+            new Symmetries(symmetric, new ActionTable(symmetric), cancelled);
+            fail("Symmetries detected after the cancellation of the run");
+        } catch (CancellationException e) {
+            System.out.println("problem_symmetry: detection cancelled");
+        }
+
+        // The shortest plan moves each object once: one step per action
+        final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+        planner.setLogLevel(LogLevel.OFF);
+        assertTrue(planner.configure(new String[] {"-s", "sequential", "--symmetry", "true", "--template", "true",
+            "--reachability", "false"}, 0));
+        final Plan plan = planner.solve(symmetric);
+        assertNotNull("No plan for problem_symmetry with a step template", plan);
+        assertEquals("Length of the plan of problem_symmetry", 2, plan.size());
+        final int[] actions = new int[plan.size()];
+        int n = 0;
+        for (Action action : plan.actions()) {
+            actions[n++] = symmetric.getActions().indexOf(action);
+        }
+        PlanValidator.validate(new ActionTable(symmetric), actions);
+        System.out.println("problem_symmetry: valid plan of 2 actions with a step template");
+
+        final Problem asymmetric = instantiate("problem_test/problem_test.pddl");
+        final Symmetries none = new Symmetries(asymmetric, new ActionTable(asymmetric), null);
+        assertEquals("Classes of problem_test", 0, none.getNbClasses());
+        assertEquals("Generators of problem_test", 0, none.getGenerators().length);
+        System.out.println("problem_test: no symmetry");
+        System.out.println("TestSymmetries: OK");
+    }
+
+    private static Problem instantiate(final String problem) throws Exception {
+        final Parser parser = new Parser();
+        parser.setLogLevel(LogLevel.OFF);
+        final DefaultParsedProblem parsed = parser.parse(DOMAIN, problem);
+        assertTrue("Errors parsing " + problem, parser.getErrorManager().isEmpty());
+        final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+        planner.setLogLevel(LogLevel.OFF);
+        return planner.instantiate(parsed);
+    }
+
+    private static int object(final Problem problem, final String name) {
+        final int index = problem.getConstantSymbols().indexOf(name);
+        assertTrue("No object " + name, index >= 0);
+        return index;
+    }
+
+    private static int[] swap(final int[] arguments, final int p, final int q) {
+        final int[] swapped = arguments.clone();
+        for (int i = 0; i < swapped.length; i++) {
+            swapped[i] = swapped[i] == p ? q : swapped[i] == q ? p : swapped[i];
+        }
+        return swapped;
+    }
+}
@@ -0,0 +1,110 @@
+package fr.uga.pddl4j.yasp;
+
+/**
+ * This class implements a dense, layered numbering of the SAT variables. Each step owns a layer of width
+ * (#fluents + #actions + #auxiliary): the fluent f at step t is numbered (t - 1) * width + f + 1 and the action a at
+ * step t is numbered (t - 1) * width + #fluents + a + 1. Auxiliary variables needed by the encoding are reserved as
+ * blocks at the end of each layer. Encoding and decoding are O(1) and integer only.
+ *
+ * @version 0.1 - 13.04.2024
+ */
+public final class VariableMap {
+
+    private final int nb_fluents;
+    private final int nb_actions;
+    private int width;
+
+    public VariableMap(int nb_fluents, int nb_actions) {
+        this.nb_fluents = nb_fluents;
+        this.nb_actions = nb_actions;
+        this.width = nb_fluents + nb_actions;
+        if (this.width <= 0) {
+            throw new IllegalArgumentException("Empty layer: " + nb_fluents + " fluents, " + nb_actions + " actions");
+        }
+    }
+
+    public int fluent(int fluent, int step) {
+        return variable(fluent, step);
+    }
+
+    public int action(int action, int step) {
+        return variable(this.nb_fluents + action, step);
+    }
+
+    /*
+     * Reserves a block of count auxiliary variables in every layer and returns the index of its first variable.
+     * All the reservations must be done before any variable is numbered.
+     */
+    public int reserve(int count) {
+        final int index = this.width;
+        this.width = checked((long) this.width + count);
+        return index;
+    }
+
+    /*
+     * Auxiliary variable at position index (as returned by reserve) of the layer of step
+     */
+    public int auxiliary(int index, int step) {
+        return variable(index, step);
+    }
+
+    /*
+     * Step of a variable (or literal), starting from 1
+     */
+    public int step(int literal) {
+        return (Math.abs(literal) - 1) / this.width + 1;
+    }
+
+    /*
+     * Position of a variable (or literal) inside its layer
+     */
+    public int index(int literal) {
+        return (Math.abs(literal) - 1) % this.width;
+    }
+
+    public boolean isFluent(int literal) {
+        return index(literal) < this.nb_fluents;
+    }
+
+    public boolean isAction(int literal) {
+        final int index = index(literal);
+        return index >= this.nb_fluents && index < this.nb_fluents + this.nb_actions;
+    }
+
+    /*
+     * Action number of an action variable (or literal)
+     */
+    public int actionOf(int literal) {
+        return index(literal) - this.nb_fluents;
+    }
+
+    /*
+     * Number of variables needed to encode the layers 1..steps
+     */
+    public int size(int steps) {
+        return checked((long) steps * this.width);
+    }
+
+    public int width() {
+        return this.width;
+    }
+
+    public int getNbFluents() {
+        return this.nb_fluents;
+    }
+
+    public int getNbActions() {
+        return this.nb_actions;
+    }
+
+    private int variable(int index, int step) {
+        return checked((long) (step - 1) * this.width + index + 1);
+    }
+
+    private static int checked(long variable) {
+        if (variable > Integer.MAX_VALUE) {
+            throw new IllegalStateException("SAT variable overflow: " + variable + " exceeds " + Integer.MAX_VALUE);
+        }
+        return (int) variable;
+    }
+}
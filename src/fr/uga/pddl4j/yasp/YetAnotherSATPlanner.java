@@ -1,29 +1,32 @@
 package fr.uga.pddl4j.yasp;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
 import org.sat4j.core.VecInt;
-import org.sat4j.minisat.SolverFactory;
-import org.sat4j.specs.IConstr;
-import org.sat4j.specs.IProblem;
+import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.ISolver;
 
-import fr.uga.pddl4j.heuristics.state.FastForward;
 import fr.uga.pddl4j.parser.DefaultParsedProblem;
 import fr.uga.pddl4j.parser.ErrorManager;
 import fr.uga.pddl4j.parser.Message;
 import fr.uga.pddl4j.parser.Parser;
 import fr.uga.pddl4j.plan.Plan;
+import fr.uga.pddl4j.plan.SequentialPlan;
 import fr.uga.pddl4j.planners.LogLevel;
 import fr.uga.pddl4j.planners.statespace.AbstractStateSpacePlanner;
 import fr.uga.pddl4j.problem.DefaultProblem;
 import fr.uga.pddl4j.problem.Problem;
-import fr.uga.pddl4j.problem.State;
 import fr.uga.pddl4j.planners.Statistics;
 
 /**
@@ -33,6 +36,8 @@ import fr.uga.pddl4j.planners.Statistics;
  */
 public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
 
+    private static final Logger LOGGER = LogManager.getLogger(YetAnotherSATPlanner.class.getName());
+
     /**
      * The main method the class. The first argument must be the path to the PDDL domain description and the second
      * argument the path to the PDDL problem description.
@@ -40,18 +45,131 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
      * @param args the command line arguments.
      */
 
+    // Default bound on the number of steps
     static final int MAXSTEPS = 50;
-    // SAT solver max number of var
-    static final int MAXVAR = 1000000;
     // SAT solver max number of clauses
     static final int NBCLAUSES = 500000;
-    // SAT solver timeout
+    // Timeout of a run: parsing, grounding, encoding and search
     static final int TIMEOUT = 3600;
 
     static final boolean DEBUG = false;
 
     private Statistics stats = getStatistics();
 
+    /*
+     * Options of the SAT encoding
+     */
+    private final EncodingOptions options = new EncodingOptions();
+
+    public EncodingOptions getEncodingOptions() {
+        return this.options;
+    }
+
+    /*
+     * Concurrent horizon search (see HorizonScheduler), used when threads > 1
+     */
+    private int threads = 1;
+    private int stride = 1;
+    private double rate = 0.8;
+    private long slice = 1000;
+    private boolean optimal = false;
+
+    /*
+     * Horizons queried by the sequential search (see HorizonStrategy) up to maxSteps steps; with optimal, the
+     * horizons below the first plan are bisected
+     */
+    private HorizonStrategy strategy = HorizonStrategy.LINEAR;
+    private double growth = 1.5;
+    private int maxSteps = MAXSTEPS;
+
+    public int getMaxSteps() {
+        return this.maxSteps;
+    }
+
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /*
+     * SAT4J configurations racing on each horizon (see SolverPortfolio)
+     */
+    private String[] portfolio = {"Default"};
+
+    /*
+     * Command of an external SAT solver reading DIMACS on its standard input, used instead of SAT4J if not null
+     */
+    private String[] external = null;
+
+    /*
+     * Solver of the running search, stopped by cancel()
+     */
+    private volatile SolverBackend running = null;
+
+    /*
+     * Deadline of the run, from the first of parse(), load() and solve() to the end of solve(); null between runs
+     */
+    private volatile Deadline deadline = null;
+
+    /*
+     * Partial result of the last search: the greatest horizon with no plan, and whether the deadline stopped it
+     */
+    private int unsat = 0;
+    private boolean expired = false;
+
+    /*
+     * The timeout of the planner (getTimeout()) is the deadline of a whole run: each SAT query gets what is left
+     */
+    public YetAnotherSATPlanner() {
+        setTimeout(TIMEOUT);
+    }
+
+    /**
+     * Stops the run from another thread: the encoding stops at its next step, the running SAT query ends with a
+     * timeout and solve() returns null, unless a plan is found meanwhile. A run not started yet stops at once.
+     */
+    public void cancel() {
+        deadline().cancel();
+        final SolverBackend solver = this.running;
+        if (solver != null) {
+            solver.cancel();
+        }
+    }
+
+    /**
+     * Greatest horizon proven to have no plan by the last search, from the lower bounds or by the solver: a plan
+     * has at least getUnsatSteps() + 1 steps. It is the partial result of a search stopped by its deadline.
+     */
+    public int getUnsatSteps() {
+        return this.unsat;
+    }
+
+    /**
+     * True if the last search found no plan because its deadline was over or it was cancelled.
+     */
+    public boolean isExpired() {
+        return this.expired;
+    }
+
+    /*
+     * Deadline of the current run, started from the timeout of the planner on first use
+     */
+    private synchronized Deadline deadline() {
+        if (this.deadline == null) {
+            this.deadline = new Deadline(getTimeout() * 1000L);
+        }
+        return this.deadline;
+    }
+
+    /*
+     * JSON lines file of the per-horizon telemetry (see Telemetry), none if null
+     */
+    private Path telemetry = null;
+
+    /*
+     * Cache of the grounded problems and of the step templates (see ProblemCache), none if null
+     */
+    private ProblemCache cache = null;
+
     /**
      * Instantiates the planning problem from a parsed problem.
      *
@@ -60,6 +178,7 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
      */
     @Override
     public Problem instantiate(DefaultParsedProblem problem) {
+        deadline();
         final Problem pb = new DefaultProblem(problem);
         pb.instantiate();
         return pb;
@@ -67,9 +186,12 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
 
     @Override
     public DefaultParsedProblem parse(String domain, String problem) throws FileNotFoundException{
+        deadline();
         long timer = System.currentTimeMillis();
         // Creates an instance of the PDDL parser
         final Parser parser = new Parser();
+        // The parser turns the root logger off: the loggers of the planner keep the level of the planner
+        Configurator.setLevel(YetAnotherSATPlanner.class.getPackage().getName(), getLogLevel().getLevel());
         parser.setLogLevel(LogLevel.OFF);
         // Parses the domain and the problem files.
         final DefaultParsedProblem parsedProblem = parser.parse(domain,problem);
@@ -79,7 +201,7 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
         if (!errorManager.isEmpty()) {
             // Prints the errors
             for (Message m : errorManager.getMessages()) {
-                System.out.println(m.toString());
+                LOGGER.error(m.toString() + "\n");
             }
         }
 
@@ -97,88 +219,542 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
     @Override
     public Plan solve(final Problem problem) {
 
-        int stepmax = MAXSTEPS;
-        Plan plan = null;
+        // Compile the actions once for all the horizons, within the deadline of the run
+        final long[] compile = {0};
+        final int[] actions = run(() -> {
+            final long timer = System.currentTimeMillis();
+            ActionTable table = new ActionTable(problem);
+            this.deadline.check();
+            if (isSymmetryBroken()) {
+                table = table.withSymmetries(new Symmetries(problem, table, this.deadline).getGenerators());
+            }
+            compile[0] = System.currentTimeMillis() - timer;
+            return table;
+        }, null);
+        stats.setTimeToEncode(stats.getTimeToEncode() + compile[0]);
+        if (actions == null) {
+            return null;
+        }
+        final Plan plan = new SequentialPlan();
+        for (int a : actions) {
+            plan.add(plan.size(), problem.getActions().get(a));
+        }
+        return plan;
+    }
+
+    /**
+     * Solves a problem of the cache (see load()).
+     *
+     * @param entry the grounded problem.
+     * @return the indices of the actions of the plan, or null if no plan is found.
+     */
+    public int[] solve(final ProblemCache.Entry entry) {
+        return run(() -> isSymmetryBroken() ? entry.getTableWithSymmetries(this.deadline) : entry.getTable(), entry);
+    }
+
+    /*
+     * The symmetries are only broken in the sequential and forall semantics
+     */
+    private boolean isSymmetryBroken() {
+        return this.options.isSymmetry() && this.options.getSemantics() != StepSemantics.EXISTS;
+    }
+
+    /**
+     * Parses and instantiates the problem, unless the cache holds it already. The cache must be configured.
+     *
+     * @return the grounded problem.
+     * @throws IOException if the files cannot be read or the cache cannot be written.
+     */
+    public ProblemCache.Entry load(final String domain, final String problem) throws IOException {
+        deadline();
+        final long timer = System.currentTimeMillis();
+        Configurator.setLevel(YetAnotherSATPlanner.class.getPackage().getName(), getLogLevel().getLevel());
+        ProblemCache.Entry entry = this.cache.load(Paths.get(domain), Paths.get(problem));
+        if (entry == null) {
+            LOGGER.info("Cache: grounding " + problem + "\n");
+            final DefaultParsedProblem parsed = parse(domain, problem);
+            if (parsed == null) {
+                throw new IOException("Cannot parse " + domain + " and " + problem);
+            }
+            entry = this.cache.store(Paths.get(domain), Paths.get(problem), instantiate(parsed));
+        } else {
+            LOGGER.info("Cache: " + problem + " loaded\n");
+        }
+        stats.setTimeToParse(System.currentTimeMillis() - timer);
+        stats.setProblem(problem);
+        return entry;
+    }
+
+    public ProblemCache getCache() {
+        return this.cache;
+    }
 
+    /*
+     * Compiles the action table and searches a plan within the deadline of the run, which is over afterwards. The
+     * parsing and the grounding by PDDL4J cannot be stopped: a run whose deadline passed meanwhile stops here.
+     */
+    private int[] run(final Supplier<ActionTable> table, final ProblemCache.Entry entry) {
+        final Deadline deadline = deadline();
+        this.unsat = 0;
+        int[] plan = null;
+        try {
+            deadline.check();
+            plan = search(table.get(), entry);
+        } catch (CancellationException e) {
+            LOGGER.info(e.getMessage() + ": at least " + (this.unsat + 1) + " steps are necessary\n");
+        } finally {
+            this.expired = plan == null && deadline.isExpired();
+            synchronized (this) {
+                this.deadline = null;
+            }
+        }
+        return plan;
+    }
 
-        // Compute a heuristic lower bound for plan steps
-        final FastForward ff = new FastForward(problem);
-        final int hlb = ff.estimate(new State(problem.getInitialState()), problem.getGoal());
-        if (hlb > MAXSTEPS) {
-            System.out.println("Problem has no solution in " + MAXSTEPS + " steps!");
-            System.out.println("At least " + hlb + " steps are necessary.");
+    /*
+     * Searches a plan with the action table of the problem and validates it. The encoding is built on the relevant
+     * actions and fluents only if the relevance option is set, the first horizon from the landmarks of the table.
+     */
+    private int[] search(final ActionTable table, final ProblemCache.Entry entry) {
+        final long timer = System.currentTimeMillis();
+        Relevance relevance = null;
+        ActionTable relevant = table;
+        if (this.options.isRelevance()) {
+            relevance = new Relevance(table);
+            if (relevance.getNbRelevantFluents() == 0) {
+                // Nothing to achieve: an empty layer cannot be encoded
+                relevance = null;
+            } else {
+                relevant = relevance.getTable();
+                LOGGER.info("Relevance: " + relevant.getNbActions() + " of " + table.getNbActions() + " actions and "
+                    + relevant.getNbFluents() + " of " + table.getNbFluents() + " fluents kept ("
+                    + (table.getNbActions() + table.getNbFluents() - relevant.getNbActions()
+                    - relevant.getNbFluents()) + " variables less per step, "
+                    + (System.currentTimeMillis() - timer) + " ms)\n");
+            }
+        }
+        this.deadline.check();
+        if (isSymmetryBroken() && relevant.getSymmetries().length > 0) {
+            LOGGER.info("Symmetries: " + relevant.getSymmetries().length + " swaps of objects broken\n");
+        }
+        final long start = System.currentTimeMillis();
+        final Landmarks landmarks = new Landmarks(relevant, this.options.isLandmarks());
+        if (landmarks.getLowerBound() == Landmarks.UNREACHABLE) {
+            LOGGER.info("Goal is unreachable: the problem has no solution\n");
+            return null;
+        }
+        LOGGER.info("Landmarks: " + (this.options.isLandmarks() ? landmarks.getFacts().length + " facts, "
+            + landmarks.getOrderings().length / 2 + " orderings, " + landmarks.getActions().length + " actions, " : "")
+            + "LM-cut " + landmarks.getLowerBound() + ", h^max " + landmarks.getDepth() + " ("
+            + (System.currentTimeMillis() - start) + " ms)\n");
+        this.deadline.check();
+        final long pruning = System.currentTimeMillis() - timer;
+        stats.setNumberOfActions(relevant.getNbActions());
+        stats.setNumberOfRelevantFluents(relevant.getNbFluents());
+
+        int[] plan = search(relevant, relevance, landmarks, entry);
+        stats.setTimeToEncode(stats.getTimeToEncode() + pruning);
+        if (plan == null) {
+            return null;
+        }
+        if (relevance != null) {
+            plan = relevance.toOriginal(plan);
+        }
+        // A plan that does not simulate is a bug of the encoding
+        PlanValidator.validate(table, plan);
+        return plan;
+    }
+
+    /*
+     * Searches a plan with the (relevant) action table, the step templates being taken from (and stored in) the
+     * cache if the problem comes from the cache
+     */
+    private int[] search(final ActionTable table, final Relevance relevance, final Landmarks landmarks,
+            final ProblemCache.Entry entry) {
+
+        int stepmax = this.maxSteps;
+        int[] plan = null;
+
+        // Intial number of steps of the SAT encoding: a plan of n actions or parallel steps has n + 1 steps
+        // LM-cut counts actions, h^max bounds the number of parallel steps: both are admissible
+        int steps = 1 + (this.options.getSemantics() == StepSemantics.SEQUENTIAL ? landmarks.getLowerBound()
+            : landmarks.getDepth());
+
+        if (steps > stepmax) {
+            LOGGER.info("Problem has no solution in " + stepmax + " steps!\n");
+            LOGGER.info("At least " + steps + " steps are necessary.\n");
             //System.exit(0);
         } else {
             long timer = System.currentTimeMillis();
-            // Intial number of steps of the SAT encoding
-            int steps = hlb;
 
-            // Create the SAT encoding
-            SATEncoding sat = new SATEncoding(problem, steps);
+            // Compute the forward reachability shared by all the horizons
+            PlanningGraph graph = null;
+            if (this.options.isReachability()) {
+                graph = new PlanningGraph(table, this.options.getSemantics(), this.options.isMutexes());
+                if (graph.getGoalLayer() == PlanningGraph.UNREACHABLE) {
+                    LOGGER.info("Goal is unreachable: the problem has no solution\n");
+                    return null;
+                }
+                LOGGER.info("Planning graph: goal reachable at step " + graph.getGoalLayer()
+                    + ", levels off at step " + graph.getLastLayer() + "\n");
+                // The goal cannot hold before its first layer
+                steps = Math.max(steps, graph.getGoalLayer());
+                this.deadline.check();
+            }
+            Invariants invariants = null;
+            if (this.options.isInvariants()) {
+                final long start = System.currentTimeMillis();
+                invariants = new Invariants(table);
+                LOGGER.info("Invariants: " + invariants.getNbMutexes() + " h2 mutexes, "
+                    + invariants.getGroups().size() + " exactly-one groups ("
+                    + (System.currentTimeMillis() - start) + " ms)\n");
+                this.deadline.check();
+            }
+            // The horizons below the first one are UNSAT by the lower bounds
+            this.unsat = steps - 1;
+
+            if (this.threads > 1) {
+                final HorizonScheduler scheduler = new HorizonScheduler(this.threads, this.stride, this.rate,
+                    this.slice, this.optimal);
+                final long analysis = System.currentTimeMillis() - timer;
+                final Telemetry telemetry = openTelemetry();
+                scheduler.setTelemetry(telemetry);
+                scheduler.setSolvers(this::newSolver);
+                try {
+                    plan = scheduler.search(table, graph, invariants, relevance, landmarks, this.options, steps,
+                        stepmax, this.deadline);
+                } finally {
+                    telemetry.close();
+                }
+                this.unsat = scheduler.getUnsatSteps();
+                // The workers encode while others search: their summed encoding time is not part of the wall time
+                stats.setTimeToEncode(analysis);
+                stats.setTimeToSearch(System.currentTimeMillis() - timer - analysis);
+                LOGGER.info("Concurrent horizons: " + scheduler.getTimeToEncode() + " ms of encoding summed over "
+                    + this.threads + " threads, within " + stats.getTimeToSearch() + " ms of search\n");
+                return plan;
+            }
+
+            // Create the SAT encoding, with the step template of the cache if any
+            final SATEncoding.Template template = loadTemplate(entry);
+            SATEncoding sat = new SATEncoding(table, graph, invariants, relevance, landmarks, steps, this.options,
+                template, this.deadline);
             stats.setTimeToEncode(System.currentTimeMillis() - timer);
-            stats.setNumberOfActions(problem.getActions().size());
-            stats.setNumberOfRelevantFluents(problem.getFluents().size());
-            // Create the SAT solver()
-            final ISolver solver = SolverFactory.newDefault();
-            solver.setTimeout(TIMEOUT);
-            // Prepare the solver to accept MAXVAR variables. MANDATORY for MAXSAT solving
-            solver.newVar(MAXVAR);
-            solver.setExpectedNumberOfClauses(NBCLAUSES);
-            IProblem ip = solver;
+            final SolverBackend solver = newSolver();
+            this.running = solver;
             // Search starts here!
-            boolean doSearch = true;
-            List<IConstr> oldGoal = new ArrayList<IConstr>();
-            VecInt vecIntEnco;
-            
+            // The goal of each horizon is guarded by a selector literal and checked under assumption:
+            // all clauses stay in the solver and what it learned carries over to the next horizons.
+            // The strategy picks the next horizon from the greatest one proven UNSAT and the least one proven SAT
+            // (0 until a plan is found); the horizons below the first one are UNSAT by the lower bound.
+            int unsat = steps - 1;
+            int found = 0;
+
+            // Encoding, transfer and solving of each horizon are timed apart for the telemetry
+            final Telemetry telemetry = openTelemetry();
+            long encodeTime = stats.getTimeToEncode();
             long timersolver = System.currentTimeMillis();
-            while (doSearch && !(steps > stepmax)) {
-                oldGoal.clear();
-                try{
-                    for (List<Integer> clause:sat.currentDimacs){
-                        vecIntEnco = new VecInt(clause.stream().mapToInt(i->i).toArray());
-                        solver.addClause(vecIntEnco);
+            try {
+                while (steps > 0 && steps <= stepmax && !this.deadline.isExpired()) {
+                    final Map<String, Number> before = solver.getStat();
+                    long start = System.currentTimeMillis();
+                    long transferTime = -1;
+                    boolean satisfiable;
+                    try{
+                        // Grow the solver to the exact number of variables of the longest horizon encoded
+                        solver.newVar(sat.getNbVariables());
+                        solver.addClauses(sat.currentDimacs);
+                        solver.addClauses(sat.currentGoal);
+                        transferTime = System.currentTimeMillis() - start;
+                        start = System.currentTimeMillis();
+
+                        // Each query only gets what is left of the deadline of the run
+                        this.deadline.check();
+                        solver.setTimeoutMs(this.deadline.remaining());
+                        satisfiable = solver.isSatisfiable(new int[] {sat.getGoalSelector(steps)});
+
                     }
+                    catch(Exception e){
+                        final long elapsed = System.currentTimeMillis() - start;
+                        telemetry.record(steps, "UNKNOWN", sat, encodeTime, transferTime < 0 ? elapsed
+                            : transferTime, transferTime < 0 ? 0 : elapsed, before, solver.getStat());
+                        if (this.deadline.isExpired()) {
+                            LOGGER.info("Deadline reached in " + steps + " steps\n");
+                        } else {
+                            LOGGER.error(e.getMessage() + "\n");
+                        }
+                        break;
+                    }
+                    telemetry.record(steps, satisfiable ? "SAT" : "UNSAT", sat, encodeTime, transferTime,
+                        System.currentTimeMillis() - start, before, solver.getStat());
 
-                    for (List<Integer> clause: sat.currentGoal){
-                        vecIntEnco = new VecInt(clause.stream().mapToInt(i->i).toArray());
-                        oldGoal.add(solver.addClause(vecIntEnco));
+                    if (satisfiable){
+                        LOGGER.info("Problem is Satisfiable in " + steps + " steps !\n");
+                        plan = sat.decodePlan(solver.model(), steps);
+                        found = steps;
+                        stats.setTimeToSearch(System.currentTimeMillis() -timersolver);
+                    } else {
+                        LOGGER.info("Problem isn't Satisfiable in " + steps + " steps :()\n");
+                        unsat = steps;
+                        this.unsat = unsat;
                     }
 
-                    doSearch = !ip.isSatisfiable();
-                    
-                }
-                catch(Exception e){
-                    System.out.println(e.getMessage());
+                    // Jumping ahead encodes all the steps up to the next horizon in one pass
+                    final int next = this.strategy.next(unsat, found, stepmax, this.growth, this.optimal);
+                    timer = System.currentTimeMillis();
+                    sat.extend(next);
+                    if (!satisfiable) {
+                        sat.refute(steps);
+                    }
+                    encodeTime = System.currentTimeMillis() - timer;
+                    stats.setTimeToEncode(stats.getTimeToEncode() + encodeTime);
+                    steps = next;
                 }
-                
-                // doSearch = false only when solution is found
-                if (!doSearch){
-                    System.out.println("Problem is Satisfiable !");
-                    final List<Integer> solution = Arrays.stream(solver.model()).boxed().collect(Collectors.toList()); 
-                    plan = sat.extractPlan(solution,problem);
-                    stats.setTimeToSearch(System.currentTimeMillis() -timersolver);
+            } catch (CancellationException e) {
+                // The encoding of the next horizon is stopped: the plan found so far, if any, is kept
+                LOGGER.info(e.getMessage() + " while encoding the next horizon\n");
+            } finally {
+                this.running = null;
+                solver.shutdown();
+                sat.release();
+                telemetry.close();
+            }
+            if (template == null) {
+                storeTemplate(entry, sat.getTemplate());
+            }
+            if (solver instanceof SolverPortfolio && this.portfolio.length > 1) {
+                LOGGER.info("Portfolio wins: " + ((SolverPortfolio) solver).getWins() + "\n");
+            }
+        }
+        return plan;
+    }
 
+    /*
+     * Step template of a problem of the cache for the options of the planner, null if not cached
+     */
+    private SATEncoding.Template loadTemplate(final ProblemCache.Entry entry) {
+        if (entry == null || !this.options.isTemplate()) {
+            return null;
+        }
+        try {
+            return this.cache.loadTemplate(entry, this.options);
+        } catch (IOException e) {
+            LOGGER.error("Cannot read the step template: " + e.getMessage() + "\n");
+            return null;
+        }
+    }
 
+    private void storeTemplate(final ProblemCache.Entry entry, final SATEncoding.Template template) {
+        if (entry == null || template == null) {
+            return;
+        }
+        try {
+            this.cache.storeTemplate(entry, this.options, template);
+        } catch (IOException e) {
+            LOGGER.error("Cannot write the step template: " + e.getMessage() + "\n");
+        }
+    }
 
-                } else {
-                    System.out.println("Problem isn't Satisfiable :()");
-                    for(IConstr clause:oldGoal){
-                        solver.removeConstr(clause);
-                    }
-                    steps++;
-                    timer = System.currentTimeMillis();
-                    sat.next();
-                    stats.setTimeToEncode(stats.getTimeToEncode() + System.currentTimeMillis() - timer);
+    /*
+     * SAT solvers of a search: a single one unless a portfolio or an external solver is configured
+     */
+    private SolverBackend newSolver() {
+        if (this.external != null) {
+            return new ExternalSolverBackend(this.options.getStorage(), this.external);
+        }
+        final SolverPortfolio portfolio = new SolverPortfolio(this.portfolio);
+        portfolio.setExpectedNumberOfClauses(NBCLAUSES);
+        return portfolio;
+    }
+
+    /*
+     * Telemetry of the run: flight recorder events only if no JSON lines file is configured or if it cannot be
+     * opened
+     */
+    private Telemetry openTelemetry() {
+        final String instance = stats.getProblem() == null ? "" : stats.getProblem();
+        if (this.telemetry != null) {
+            try {
+                return new Telemetry(instance, this.telemetry);
+            } catch (IOException e) {
+                LOGGER.error("Cannot open the telemetry file " + this.telemetry + ": " + e.getMessage() + "\n");
+            }
+        }
+        return new Telemetry(instance);
+    }
+
+    /*
+     * Hands all the clauses of a store to the solver through a single reused buffer
+     */
+    static void addClauses(final ISolver solver, final ClauseStore clauses, final VecInt buffer)
+            throws ContradictionException {
+        clauses.forEach((literals, from, to) -> {
+            solver.addClause(toVecInt(literals, from, to, buffer));
+        });
+    }
+
+    /*
+     * Loads literals[from, to[ in the reused buffer without boxing
+     */
+    private static VecInt toVecInt(final int[] literals, final int from, final int to, final VecInt buffer) {
+        buffer.clear();
+        buffer.ensure(to - from);
+        for (int i = from; i < to; i++) {
+            buffer.unsafePush(literals[i]);
+        }
+        return buffer;
+    }
+
+    /*
+     * Reads the options following the domain and the problem on the command line:
+     *   -s, --semantics sequential|forall|exists
+     *   -a, --amo pairwise|counter|ladder|product
+     *   -t, --threads n         horizons searched concurrently on n threads
+     *   -k, --stride k          distance between two concurrent horizons
+     *   --rate r                geometric rate of the time slices of the concurrent horizons
+     *   --slice ms              base time slice of the concurrent horizons
+     *   --optimal true|false    keep proving shorter horizons UNSAT once a plan is found
+     *   --horizon linear|geometric|doubling  growth of the horizon after an UNSAT one (default linear)
+     *   --growth r              rate of the geometric growth (default 1.5)
+     *   --max-steps n           greatest number of steps searched (default 50)
+     *   -p, --portfolio c1,c2   SAT4J configurations racing on each horizon ("default" for a built-in set)
+     *   -x, --external "cmd"    external SAT solver reading DIMACS on its standard input, relaunched with all the
+     *                           clauses for each horizon: meant for few horizons (e.g. --horizon doubling)
+     *   --reachability true|false  fix the variables out of reach of the initial state (default true)
+     *   --mutexes true|false    Graphplan mutexes in the reachability analysis (default false)
+     *   --invariants true|false h2 mutexes and exactly-one groups added to every step (default false)
+     *   --relevance true|false  drop the actions and fluents that cannot matter to the goal (default true)
+     *   --step-relevance true|false  disable the actions too far from the goal of each horizon (default false)
+     *   --symmetry true|false   break the symmetries between interchangeable objects (default true)
+     *   --landmarks true|false  require the fact and action landmarks and the orderings at every horizon (default false)
+     *   -e, --encoding-threads n  steps of a horizon encoded in parallel on n threads (default 1)
+     *   --template true|false   copy the transitions from a template once the planning graph levels off (default true)
+     *   --clauses heap|direct|mapped  storage of the clauses until they are handed to the solver (default heap)
+     *   --telemetry file.jsonl  append the telemetry of each horizon to the file as JSON lines
+     *   --cache dir             cache of the grounded problems and of the step templates (used by main())
+     *   --timeout s             deadline of the whole run: parsing, grounding, encoding and search (default 3600)
+     */
+    boolean configure(final String[] args, final int from) {
+        for (int i = from; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                return false;
+            }
+            final String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "-s":
+                    case "--semantics":
+                        this.options.setSemantics(StepSemantics.valueOf(value.toUpperCase()));
+                        break;
+                    case "-a":
+                    case "--amo":
+                        this.options.setAtMostOne(AtMostOne.valueOf(value.toUpperCase()));
+                        break;
+                    case "-t":
+                    case "--threads":
+                        this.threads = Integer.parseInt(value);
+                        break;
+                    case "-k":
+                    case "--stride":
+                        this.stride = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        this.rate = Double.parseDouble(value);
+                        break;
+                    case "--slice":
+                        this.slice = Long.parseLong(value);
+                        break;
+                    case "--optimal":
+                        this.optimal = Boolean.parseBoolean(value);
+                        break;
+                    case "--horizon":
+                        this.strategy = HorizonStrategy.valueOf(value.toUpperCase());
+                        break;
+                    case "--growth":
+                        this.growth = Double.parseDouble(value);
+                        if (!(this.growth > 1)) {
+                            throw new IllegalArgumentException("The growth rate must be greater than 1");
+                        }
+                        break;
+                    case "--max-steps":
+                        this.maxSteps = Integer.parseInt(value);
+                        break;
+                    case "-p":
+                    case "--portfolio":
+                        this.portfolio = value.equalsIgnoreCase("default") ? SolverPortfolio.DEFAULT_PORTFOLIO
+                            : value.split(",");
+                        // Fails early on unknown configurations
+                        new SolverPortfolio(this.portfolio).shutdown();
+                        break;
+                    case "--reachability":
+                        this.options.setReachability(Boolean.parseBoolean(value));
+                        break;
+                    case "--mutexes":
+                        this.options.setMutexes(Boolean.parseBoolean(value));
+                        break;
+                    case "--invariants":
+                        this.options.setInvariants(Boolean.parseBoolean(value));
+                        break;
+                    case "--relevance":
+                        this.options.setRelevance(Boolean.parseBoolean(value));
+                        break;
+                    case "--symmetry":
+                        this.options.setSymmetry(Boolean.parseBoolean(value));
+                        break;
+                    case "--landmarks":
+                        this.options.setLandmarks(Boolean.parseBoolean(value));
+                        break;
+                    case "--step-relevance":
+                        this.options.setStepRelevance(Boolean.parseBoolean(value));
+                        break;
+                    case "-e":
+                    case "--encoding-threads":
+                        this.options.setParallelism(Integer.parseInt(value));
+                        break;
+                    case "--template":
+                        this.options.setTemplate(Boolean.parseBoolean(value));
+                        break;
+                    case "--clauses":
+                        this.options.setStorage(ClauseStorage.valueOf(value.toUpperCase()));
+                        break;
+                    case "--cache":
+                        this.cache = new ProblemCache(Paths.get(value));
+                        break;
+                    case "--timeout":
+                        setTimeout(Integer.parseInt(value));
+                        break;
+                    case "--telemetry":
+                        this.telemetry = Paths.get(value);
+                        break;
+                    case "-x":
+                    case "--external":
+                        this.external = value.trim().split("\\s+");
+                        break;
+                    default:
+                        return false;
                 }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid value for " + args[i] + ": " + value);
+                return false;
             }
         }
-        return plan;
+        return true;
+    }
+
+    /*
+     * What a search stopped by its deadline proved
+     */
+    private static void printPartialResult(final YetAnotherSATPlanner planner) {
+        if (planner.isExpired()) {
+            System.out.println("Deadline reached: at least " + (planner.getUnsatSteps() + 1)
+                + " steps are necessary");
+        }
     }
 
     public static void main(final String[] args) {
 
         // Checks the number of arguments from the command line
-        if (args.length != 2) {
+        if (args.length < 2) {
             System.out.println("Invalid command line");
             return;
         }
@@ -186,6 +762,28 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
         try {
             // Creates an instance of the SAT planner
             final YetAnotherSATPlanner planner = new YetAnotherSATPlanner();
+            if (!planner.configure(args, 2)) {
+                System.out.println("Invalid command line");
+                return;
+            }
+            // Grounded problems are taken from the cache if any
+            if (planner.getCache() != null) {
+                final ProblemCache.Entry entry = planner.load(args[0], args[1]);
+                if (!entry.isSolvable()) {
+                    System.out.println("Goal can be simplified to FALSE. No search will solve it");
+                    return;
+                }
+                final int[] plan = planner.solve(entry);
+                if (plan != null) {
+                    System.out.println("YetAnotherSATPlanner Plan:");
+                    System.out.println(entry.toString(plan));
+                    System.out.println(planner.getStatistics().toString());
+                } else {
+                    System.out.println("No solution found!");
+                    printPartialResult(planner);
+                }
+                return;
+            }
             final DefaultParsedProblem parsedProblem = planner.parse(args[0],args[1]);
 
             // Prints that the domain and the problem were successfully parsed
@@ -209,6 +807,7 @@ public class YetAnotherSATPlanner extends AbstractStateSpacePlanner {
                         System.out.println(planner.getStatistics().toString());
                     } else {
                         System.out.println("No solution found!");
+                        printPartialResult(planner);
                     }
             }
             // This exception could happen if the domain or the problem does not exist
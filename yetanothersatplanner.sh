@@ -17,6 +17,9 @@ Solve(){
 Test(){
 
     java -cp classes:lib/pddl4j-4.0.0.jar:lib/org.sat4j.core.jar -server -Xms2048m -Xmx2048m fr.uga.pddl4j.yasp.TestPlanner ./domain.pddl ./problem_test
+    java -cp classes:lib/pddl4j-4.0.0.jar:lib/org.sat4j.core.jar fr.uga.pddl4j.yasp.TestAtMostOne
+    java -cp classes:lib/pddl4j-4.0.0.jar:lib/org.sat4j.core.jar fr.uga.pddl4j.yasp.TestSymmetries
+    java -cp classes:lib/pddl4j-4.0.0.jar:lib/org.sat4j.core.jar fr.uga.pddl4j.yasp.TestClauseStorage
 }
 
 Compare(){
@@ -27,25 +30,41 @@ Compare(){
     python3 CSVToGraph.py
  }
 
+Batch(){
+
+	read -p "Enter domain file [path to the file]: " domainFile
+	read -p "Enter problem directory [path to the directory]: " problemDir
+    java -cp classes:lib/pddl4j-4.0.0.jar:lib/org.sat4j.core.jar fr.uga.pddl4j.yasp.BatchRunner $domainFile $problemDir --fork true
+}
+
+Benchmark(){
+
+	mvn -q -f jmh/pom.xml package && bash jmh/run.sh compare
+}
+
 show_menus() {
     echo "| 1. Compile SAT Planner"
     echo "| 2. Solve Domain/Problem"
     echo "| 3. Test on simple problems"
     echo "| 4. Compare SAT Planner with HSP"
-    echo "| 5. Exit"
+    echo "| 5. Run the JMH benchmarks against the baseline"
+    echo "| 6. Run the planner on a directory of problems (batch.csv)"
+    echo "| 7. Exit"
     echo " ----------"
 }
 
 
 read_options(){
     local choice
-    read -p "Enter choice [1 - 5] : " choice
+    read -p "Enter choice [1 - 7] : " choice
     case $choice in
         1) Compile ;;
         2) Solve ;;
         3) Test ;;
         4) Compare ;;
-        5) exit 0;;
+        5) Benchmark ;;
+        6) Batch ;;
+        7) exit 0;;
         *) echo "Error..." && sleep 1 && return
     esac
 }